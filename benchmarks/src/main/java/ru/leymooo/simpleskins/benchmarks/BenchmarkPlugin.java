@@ -0,0 +1,105 @@
+package ru.leymooo.simpleskins.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.velocitypowered.api.event.proxy.ProxyInitializeEvent;
+import com.velocitypowered.api.event.proxy.ProxyShutdownEvent;
+import com.velocitypowered.api.proxy.ProxyServer;
+import ninja.leaping.configurate.ConfigurationNode;
+import ninja.leaping.configurate.yaml.YAMLConfigurationLoader;
+import org.slf4j.helpers.NOPLogger;
+import ru.leymooo.simpleskins.SimpleSkins;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * SimpleSkins started outside of the proxy. Velocity services are stubs, data directory is created
+ * in target and skin API is served by local HTTP server, so benchmarks run offline.
+ */
+final class BenchmarkPlugin implements Closeable {
+
+    private final HttpServer httpServer;
+    private final ExecutorService httpExecutor = Executors.newCachedThreadPool();
+    private final SimpleSkins plugin;
+
+    BenchmarkPlugin() throws IOException {
+        byte[] uuidResponse = JsonParseBenchmark.readResource("/responses/ashcon-uuid.json");
+        byte[] userResponse = JsonParseBenchmark.readResource("/responses/ashcon-user.json");
+        this.httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.httpServer.createContext("/uuid/", exchange -> respond(exchange, uuidResponse));
+        this.httpServer.createContext("/user/", exchange -> respond(exchange, userResponse));
+        this.httpServer.setExecutor(httpExecutor);
+        this.httpServer.start();
+
+        //database url is relative to the working directory, like plugins/simpleskins on the proxy
+        Path dataDirectory = Paths.get("target", "benchmark-" + System.nanoTime());
+        writeConfig(dataDirectory, "http://127.0.0.1:" + httpServer.getAddress().getPort());
+        this.plugin = createPlugin(dataDirectory);
+        this.plugin.onProxyInitialize(new ProxyInitializeEvent());
+    }
+
+    /**
+     * Plugin which is not initialized, enough for components which only use scheduler
+     */
+    static SimpleSkins createPlugin(Path dataDirectory) {
+        return new SimpleSkins(Stubs.stub(ProxyServer.class), NOPLogger.NOP_LOGGER, dataDirectory);
+    }
+
+    SimpleSkins getPlugin() {
+        return plugin;
+    }
+
+    @Override
+    public void close() {
+        plugin.onShutDown(new ProxyShutdownEvent());
+        httpServer.stop(0);
+        httpExecutor.shutdownNow();
+    }
+
+    private static void writeConfig(Path dataDirectory, String stubUrl) throws IOException {
+        Files.createDirectories(dataDirectory);
+        Path file = dataDirectory.resolve("config.yml");
+        try (InputStream in = SimpleSkins.class.getClassLoader().getResourceAsStream("config.yml")) {
+            Files.copy(in, file);
+        }
+        YAMLConfigurationLoader loader = YAMLConfigurationLoader.builder().setPath(file).setIndent(2).build();
+        ConfigurationNode config = loader.load();
+        Map<String, Object> mirror = new LinkedHashMap<>();
+        mirror.put("name", "stub");
+        mirror.put("type", "ashcon");
+        mirror.put("uuid-url", stubUrl + "/uuid/");
+        mirror.put("skin-url", stubUrl + "/user/");
+        ConfigurationNode providers = config.getNode("providers");
+        providers.getNode("ashcon").setValue(false);
+        providers.getNode("mojang").setValue(false);
+        providers.getNode("custom").setValue(Collections.singletonList(mirror));
+        providers.getNode("bulk-uuid", "enabled").setValue(false);
+        //benchmarks measure the plugin, not the rate limit
+        providers.getNode("rate-limit", "requests-per-second").setValue(1_000_000);
+        providers.getNode("rate-limit", "burst").setValue(1_000_000);
+        config.getNode("executors", "network", "threads").setValue(64);
+        config.getNode("skin-refresh", "enabled").setValue(false);
+        loader.save(config);
+    }
+
+    private static void respond(HttpExchange exchange, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package ru.leymooo.simpleskins.benchmarks;
+
+import com.velocitypowered.api.util.GameProfile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.leymooo.simpleskins.utils.DataBaseUtils;
+import ru.leymooo.simpleskins.utils.skinfetch.FetchResult;
+import ru.leymooo.simpleskins.utils.skinfetch.ProfileJsonReader;
+import ru.leymooo.simpleskins.utils.skinfetch.SkinFetchResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Skin lookups and saves against H2 database in a temporary data directory
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DataBaseBenchmark {
+
+    private static final int USERS = 1000;
+    private static final int BATCH = 100;
+    private final String[] names = new String[USERS];
+    private BenchmarkPlugin benchmarkPlugin;
+    private DataBaseUtils dataBaseUtils;
+    private FetchResult skin;
+    private int index;
+
+    @Setup
+    public void setup() throws IOException {
+        benchmarkPlugin = new BenchmarkPlugin();
+        dataBaseUtils = benchmarkPlugin.getPlugin().getDataBaseUtils();
+        GameProfile.Property property = ProfileJsonReader.readAshconTextures(
+                new ByteArrayInputStream(JsonParseBenchmark.readResource("/responses/ashcon-user.json")));
+        skin = new SkinFetchResult(UUID.randomUUID(), property);
+        for (int i = 0; i < USERS; i++) {
+            names[i] = "user" + i;
+            dataBaseUtils.saveUser(names[i], skin);
+        }
+        dataBaseUtils.flushSaves();
+    }
+
+    @TearDown
+    public void tearDown() {
+        benchmarkPlugin.close();
+    }
+
+    @Benchmark
+    public Optional<FetchResult> getPropertyCached() throws SQLException {
+        return dataBaseUtils.getProperty(nextName());
+    }
+
+    @Benchmark
+    public Optional<FetchResult> getPropertyFromDatabase() throws SQLException {
+        String name = nextName();
+        dataBaseUtils.getUserCache().invalidate(name);
+        return dataBaseUtils.getProperty(name);
+    }
+
+    /**
+     * Cost of queueing a save, batches are written by the plugin executor
+     */
+    @Benchmark
+    public FetchResult saveUser() {
+        dataBaseUtils.saveUser(nextName(), skin);
+        return skin;
+    }
+
+    /**
+     * Cost of a save including the batched write
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public FetchResult saveUserAndFlush() {
+        for (int i = 0; i < BATCH; i++) {
+            dataBaseUtils.saveUser(nextName(), skin);
+        }
+        dataBaseUtils.flushSaves();
+        return skin;
+    }
+
+    private String nextName() {
+        index = (index + 1) % USERS;
+        return names[index];
+    }
+}
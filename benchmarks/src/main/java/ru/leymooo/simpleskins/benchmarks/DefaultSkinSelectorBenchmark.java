@@ -0,0 +1,63 @@
+package ru.leymooo.simpleskins.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.leymooo.simpleskins.utils.DefaultSkinSelector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Selection of default skins by logins which run at the same time
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DefaultSkinSelectorBenchmark {
+
+    @Param({"ROUND_ROBIN", "WEIGHTED", "HASH"})
+    public DefaultSkinSelector.Mode mode;
+    private DefaultSkinSelector<String> selector;
+    private final String[] players = new String[256];
+
+    @Setup
+    public void setup() {
+        List<String> skins = new ArrayList<>();
+        int[] weights = new int[10];
+        for (int i = 0; i < weights.length; i++) {
+            skins.add("skin" + i);
+            weights[i] = i + 1;
+        }
+        selector = new DefaultSkinSelector<>(mode);
+        selector.setSkins(skins, weights);
+        for (int i = 0; i < players.length; i++) {
+            players[i] = "Player" + i;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String select() {
+        return selector.select(players[42]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String selectContended() {
+        return selector.select(players[42]);
+    }
+}
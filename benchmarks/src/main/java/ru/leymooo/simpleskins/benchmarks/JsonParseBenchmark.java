@@ -0,0 +1,88 @@
+package ru.leymooo.simpleskins.benchmarks;
+
+import com.google.common.io.ByteStreams;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.velocitypowered.api.util.GameProfile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.leymooo.simpleskins.utils.skinfetch.ProfileJsonReader;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tree parsing which was used before versus streaming extraction of textures.
+ * Run with '-prof gc' to see bytes allocated per parse (gc.alloc.rate.norm).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonParseBenchmark {
+
+    @SuppressWarnings("deprecation")
+    private static final JsonParser JSON_PARSER = new JsonParser();
+    private byte[] ashconUser;
+    private byte[] mojangProfile;
+
+    @Setup
+    public void setup() throws IOException {
+        ashconUser = readResource("/responses/ashcon-user.json");
+        mojangProfile = readResource("/responses/mojang-profile.json");
+    }
+
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public GameProfile.Property ashconTree() throws IOException {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(ashconUser), StandardCharsets.UTF_8))) {
+            JsonObject skin = JSON_PARSER.parse(reader).getAsJsonObject().getAsJsonObject("textures").getAsJsonObject("raw");
+            return new GameProfile.Property("textures", skin.get("value").getAsString(), skin.get("signature").getAsString());
+        }
+    }
+
+    @Benchmark
+    public GameProfile.Property ashconStreaming() throws IOException {
+        return ProfileJsonReader.readAshconTextures(new ByteArrayInputStream(ashconUser));
+    }
+
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public GameProfile.Property mojangTree() throws IOException {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(mojangProfile), StandardCharsets.UTF_8))) {
+            JsonObject skin = JSON_PARSER.parse(reader).getAsJsonObject().getAsJsonArray("properties").get(0).getAsJsonObject();
+            return new GameProfile.Property("textures", skin.get("value").getAsString(), skin.get("signature").getAsString());
+        }
+    }
+
+    @Benchmark
+    public GameProfile.Property mojangStreaming() throws IOException {
+        return ProfileJsonReader.readMojangTextures(new ByteArrayInputStream(mojangProfile));
+    }
+
+    static byte[] readResource(String name) throws IOException {
+        try (InputStream in = JsonParseBenchmark.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IOException("No resource " + name);
+            }
+            return ByteStreams.toByteArray(in);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package ru.leymooo.simpleskins.benchmarks;
+
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.util.GameProfile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.leymooo.simpleskins.utils.SkinApplier;
+import ru.leymooo.simpleskins.utils.skinfetch.ProfileJsonReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replacing textures in the profile of a joining player
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SkinApplierBenchmark {
+
+    private GameProfile.Property skin;
+    private List<GameProfile.Property> withSkin;
+    private List<GameProfile.Property> withoutSkin;
+    private Player player;
+
+    @Setup
+    public void setup() throws IOException {
+        skin = ProfileJsonReader.readAshconTextures(
+                new ByteArrayInputStream(JsonParseBenchmark.readResource("/responses/ashcon-user.json")));
+        GameProfile.Property other = new GameProfile.Property("other", "value", "signature");
+        withSkin = Arrays.asList(other, new GameProfile.Property("textures", "old", "old"));
+        withoutSkin = Arrays.asList(other);
+        player = createPlayer(withSkin);
+    }
+
+    @Benchmark
+    public List<GameProfile.Property> createPropertiesReplace() {
+        return SkinApplier.createProperties(withSkin, skin);
+    }
+
+    @Benchmark
+    public List<GameProfile.Property> createPropertiesAdd() {
+        return SkinApplier.createProperties(withoutSkin, skin);
+    }
+
+    @Benchmark
+    public Player applySkin() {
+        SkinApplier.applySkin(player, skin);
+        return player;
+    }
+
+    /**
+     * Player which only keeps profile properties
+     */
+    @SuppressWarnings("unchecked")
+    private static Player createPlayer(List<GameProfile.Property> properties) {
+        List<GameProfile.Property>[] holder = new List[]{new ArrayList<>(properties)};
+        Player stub = Stubs.stub(Player.class);
+        return (Player) Proxy.newProxyInstance(Player.class.getClassLoader(), new Class<?>[]{Player.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getGameProfileProperties":
+                    return holder[0];
+                case "setGameProfileProperties":
+                    holder[0] = (List<GameProfile.Property>) args[0];
+                    return null;
+                default:
+                    return method.invoke(stub, args);
+            }
+        });
+    }
+}
@@ -0,0 +1,74 @@
+package ru.leymooo.simpleskins.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.leymooo.simpleskins.utils.FetchScheduler.Priority;
+import ru.leymooo.simpleskins.utils.skinfetch.FetchResult;
+import ru.leymooo.simpleskins.utils.skinfetch.SkinFetcher;
+import ru.leymooo.simpleskins.utils.skinfetch.SkinProviderRouter;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests to the local API stub and parsing of responses. Provider requests skip the fetch cache,
+ * fetcher requests go through it like lookups of joining players.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SkinFetcherBenchmark {
+
+    private static final UUID SKIN_OWNER = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+    private BenchmarkPlugin benchmarkPlugin;
+    private SkinFetcher skinFetcher;
+    private SkinProviderRouter router;
+
+    @Setup
+    public void setup() throws IOException {
+        benchmarkPlugin = new BenchmarkPlugin();
+        skinFetcher = benchmarkPlugin.getPlugin().getSkinFetcher();
+        router = skinFetcher.getProviderRouter();
+    }
+
+    @TearDown
+    public void tearDown() {
+        benchmarkPlugin.close();
+    }
+
+    @Benchmark
+    public UUID fetchUuid() {
+        return router.fetchUuid("Notch").join();
+    }
+
+    @Benchmark
+    public FetchResult fetchSkin() {
+        return router.fetchSkin(SKIN_OWNER).join();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public FetchResult fetchSkinConcurrent() {
+        return router.fetchSkin(SKIN_OWNER).join();
+    }
+
+    @Benchmark
+    public Optional<FetchResult> fetchSkinCached() {
+        return skinFetcher.fetchSkin(SKIN_OWNER.toString(), true, Priority.LOGIN).join();
+    }
+}
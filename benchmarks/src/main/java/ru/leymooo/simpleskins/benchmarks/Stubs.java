@@ -0,0 +1,41 @@
+package ru.leymooo.simpleskins.benchmarks;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * No-op implementations of velocity interfaces. Methods return default values,
+ * methods which return interfaces (like scheduler task builders) return stubs too.
+ */
+final class Stubs {
+
+    private Stubs() {
+    }
+
+    static <T> T stub(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> invoke(proxy, method, args)));
+    }
+
+    private static Object invoke(Object proxy, Method method, Object[] args) {
+        if (method.getDeclaringClass() == Object.class) {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return "Stub of " + proxy.getClass().getInterfaces()[0].getSimpleName();
+            }
+        }
+        Class<?> type = method.getReturnType();
+        if (type == void.class) {
+            return null;
+        }
+        if (type.isPrimitive()) {
+            return Array.get(Array.newInstance(type, 1), 0);
+        }
+        return type.isInterface() ? stub(type) : null;
+    }
+}
@@ -0,0 +1,78 @@
+package ru.leymooo.simpleskins.benchmarks;
+
+import com.velocitypowered.api.util.GameProfile;
+import ninja.leaping.configurate.SimpleConfigurationNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.leymooo.simpleskins.utils.UuidFetchCache;
+import ru.leymooo.simpleskins.utils.skinfetch.FetchResult;
+import ru.leymooo.simpleskins.utils.skinfetch.SkinFetchResult;
+
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups and puts of fetched skins. Keys are taken from a fixed set, so the cache does not grow.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UuidFetchCacheBenchmark {
+
+    private static final int KEYS = 1024;
+    private final FetchResult[] results = new FetchResult[KEYS];
+    private UuidFetchCache cache;
+
+    @Setup
+    public void setup() {
+        cache = new UuidFetchCache(BenchmarkPlugin.createPlugin(Paths.get("target")), SimpleConfigurationNode.root());
+        GameProfile.Property property = new GameProfile.Property("textures", "value", "signature");
+        for (int i = 0; i < KEYS; i++) {
+            results[i] = new SkinFetchResult(UUID.randomUUID(), property);
+            if (i % 2 == 0) {
+                cache.cache(results[i]);
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Optional<FetchResult> getIfCached() {
+        return cache.getIfCached(nextResult().getId());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public FetchResult getWithLoader() {
+        FetchResult result = nextResult();
+        return cache.get(result.getId(), () -> CompletableFuture.completedFuture(result)).join();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public FetchResult put() {
+        FetchResult result = nextResult();
+        cache.cache(result);
+        return result;
+    }
+
+    private FetchResult nextResult() {
+        return results[ThreadLocalRandom.current().nextInt(KEYS)];
+    }
+}
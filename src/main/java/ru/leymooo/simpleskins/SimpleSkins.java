@@ -2,14 +2,18 @@ package ru.leymooo.simpleskins;
 
 import com.google.common.reflect.TypeToken;
 import com.google.inject.Inject;
+import com.velocitypowered.api.event.EventTask;
+import com.velocitypowered.api.event.PostOrder;
 import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.connection.PostLoginEvent;
+import com.velocitypowered.api.event.connection.PreLoginEvent;
 import com.velocitypowered.api.event.proxy.ProxyInitializeEvent;
 import com.velocitypowered.api.event.proxy.ProxyShutdownEvent;
 import com.velocitypowered.api.plugin.Plugin;
 import com.velocitypowered.api.plugin.annotation.DataDirectory;
 import com.velocitypowered.api.proxy.Player;
 import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.scheduler.ScheduledTask;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
 import ninja.leaping.configurate.ConfigurationNode;
@@ -17,22 +21,34 @@ import ninja.leaping.configurate.objectmapping.ObjectMappingException;
 import ninja.leaping.configurate.yaml.YAMLConfigurationLoader;
 import org.slf4j.Logger;
 import ru.leymooo.simpleskins.command.SkinCommand;
+import ru.leymooo.simpleskins.metrics.Counter;
+import ru.leymooo.simpleskins.metrics.Metrics;
+import ru.leymooo.simpleskins.metrics.MetricsMBean;
+import ru.leymooo.simpleskins.metrics.PrometheusExporter;
+import ru.leymooo.simpleskins.metrics.Timer;
 import ru.leymooo.simpleskins.utils.DataBaseUtils;
-import ru.leymooo.simpleskins.utils.RoundIterator;
+import ru.leymooo.simpleskins.utils.DefaultSkinPool;
+import ru.leymooo.simpleskins.utils.DefaultSkinSelector;
+import ru.leymooo.simpleskins.utils.FetchScheduler.Priority;
+import ru.leymooo.simpleskins.utils.PluginExecutors;
+import ru.leymooo.simpleskins.utils.RemoteChangePoller;
+import ru.leymooo.simpleskins.utils.ResolvedSkin;
 import ru.leymooo.simpleskins.utils.SkinApplier;
+import ru.leymooo.simpleskins.utils.SkinPrefetcher;
+import ru.leymooo.simpleskins.utils.SkinRefresher;
 import ru.leymooo.simpleskins.utils.UuidFetchCache;
 import ru.leymooo.simpleskins.utils.skinfetch.FetchResult;
 import ru.leymooo.simpleskins.utils.skinfetch.SkinFetcher;
+import ru.leymooo.simpleskins.utils.skinfetch.HttpTransports;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
-import java.util.concurrent.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 @Plugin(id = "simpleskins", name = "SimpleSkins", version = "1.5",
         description = "Simple skins restorer plugin for velocity",
@@ -42,10 +58,20 @@ public class SimpleSkins {
     private final ProxyServer server;
     private final Logger logger;
     private final Path dataDirectory;
-    private final ExecutorService service = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-    private final DataBaseUtils dataBaseUtils;
+    private final Metrics metrics = new Metrics();
+    private final Timer loginTimer = metrics.timer("simpleskins_login_seconds");
+    private final Counter loginFallbacks = metrics.counter("simpleskins_login_fallbacks_total");
+    private final Counter deferredLogins = metrics.counter("simpleskins_login_deferred_total");
+    private MetricsMBean metricsBean;
+    private PrometheusExporter prometheusExporter;
+    private PluginExecutors executors;
+    private DataBaseUtils dataBaseUtils;
     private SkinFetcher skinFetcher;
-    private RoundIterator<FetchResult> defaultSkins;
+    private SkinRefresher skinRefresher;
+    private RemoteChangePoller changePoller;
+    private DefaultSkinSelector<FetchResult> defaultSkins;
+    private DefaultSkinPool defaultSkinPool;
+    private SkinPrefetcher prefetcher;
     private ConfigurationNode config;
 
     @Inject
@@ -54,7 +80,6 @@ public class SimpleSkins {
         this.server = server;
         this.logger = logger;
         this.dataDirectory = userConfigDirectory;
-        this.dataBaseUtils = new DataBaseUtils(this);
         logger.info("SimpleSkins loaded");
     }
 
@@ -67,13 +92,28 @@ public class SimpleSkins {
             logger.error("Config is not loaded. Plugin will be inactive");
             return;
         }
-        this.skinFetcher = new SkinFetcher(this, dataBaseUtils, new UuidFetchCache(this));
+        initMetrics();
+        this.executors = new PluginExecutors(this, config.getNode("executors"));
+        this.dataBaseUtils = new DataBaseUtils(this);
+        ConfigurationNode sql = config.getNode("database", "sql");
+        if (dataBaseUtils.isAvailable() && dataBaseUtils.getBackend().isShared() && sql.getNode("sync-interval").getLong(5) > 0) {
+            this.changePoller = new RemoteChangePoller(this, dataBaseUtils, sql);
+        }
+        this.skinFetcher = new SkinFetcher(this, dataBaseUtils, new UuidFetchCache(this, config.getNode("skin-cache")),
+                HttpTransports.create(config.getNode("http"), executors.getNetwork()));
+        this.defaultSkins = new DefaultSkinSelector<>(getSelectionMode());
+        if (config.getNode("prefetch", "enabled").getBoolean(true)) {
+            this.prefetcher = new SkinPrefetcher(config.getNode("prefetch"), metrics);
+        }
 
         try {
             initDefaultSkins();
         } catch (Exception e) {
             logger.warn("Failed to load default skins", e);
         }
+        if (config.getNode("skin-refresh", "enabled").getBoolean(true)) {
+            this.skinRefresher = new SkinRefresher(this, config.getNode("skin-refresh"));
+        }
         this.server.getCommandManager().register("skin", new SkinCommand(this));
         logger.info("SimpleSkins enabled");
     }
@@ -81,36 +121,122 @@ public class SimpleSkins {
     @Subscribe
     public void onShutDown(ProxyShutdownEvent ev) {
         logger.info("Disabling SimpleSkins");
-        this.dataBaseUtils.closeConnection();
-        this.service.shutdownNow();
-        try {
-            this.service.awaitTermination(5000, TimeUnit.MILLISECONDS);
-        } catch (InterruptedException ignored) {
+        if (this.skinRefresher != null) {
+            this.skinRefresher.close();
+        }
+        if (this.changePoller != null) {
+            this.changePoller.close();
+        }
+        if (this.defaultSkinPool != null) {
+            this.defaultSkinPool.close();
+        }
+        if (this.skinFetcher != null) {
+            this.skinFetcher.close();
+        }
+        if (this.executors != null) {
+            this.executors.shutdown();
+        }
+        if (this.prometheusExporter != null) {
+            this.prometheusExporter.close();
+        }
+        if (this.metricsBean != null) {
+            this.metricsBean.unregister();
+        }
+        if (this.dataBaseUtils != null) {
+            logger.info("User cache stats: {}", this.dataBaseUtils.getUserCache().getStats());
+            this.dataBaseUtils.closeConnection();
         }
         logger.info("SimpleSkins disabled");
     }
 
+    /**
+     * Starts resolving the skin while the proxy authenticates the player
+     */
+    @Subscribe(order = PostOrder.LATE)
+    public void onPreLogin(PreLoginEvent event) {
+        if (prefetcher == null || !event.getResult().isAllowed()) {
+            return;
+        }
+        String name = event.getUsername();
+        boolean onlineMode = server.getConfiguration().isOnlineMode();
+        prefetcher.prefetch(event.getConnection().getRemoteAddress(), name, () -> resolveSkin(name, onlineMode));
+    }
+
     @Subscribe
-    public void onPostLogin(PostLoginEvent event) {
+    public EventTask onPostLogin(PostLoginEvent event) {
+        long start = System.nanoTime();
         Player player = event.getPlayer();
-        boolean hasSkin = SkinApplier.hasSkin(player);
         boolean onlineMode = server.getConfiguration().isOnlineMode();
-        Optional<FetchResult> maybeCached = skinFetcher.getPlayerSkinFromDatabase(player.getUsername());
-        if ((hasSkin || onlineMode) && maybeCached.isPresent()) {
-            SkinApplier.applySkin(player, maybeCached.get().getProperty());
-            return;
+        CompletableFuture<ResolvedSkin> resolved = prefetcher == null ? null
+                : prefetcher.take(player.getRemoteAddress(), player.getUsername());
+        if (resolved == null) {
+            resolved = resolveSkin(player.getUsername(), onlineMode);
         }
-        if (!onlineMode) {
-            Optional<FetchResult> toSet = maybeCached.isPresent()
-                    ? maybeCached : skinFetcher.fetchSkin(player.getUsername(), true);
-            FetchResult skin = toSet.orElse(defaultSkins.next());
+        CompletableFuture<FetchResult> toApply = new CompletableFuture<>();
+        resolved.whenComplete((resolution, ex) -> {
+            if (ex != null) {
+                logger.error("Can not resolve skin for {}", player.getUsername(), ex);
+            }
+            toApply.complete(ex == null ? resolution.getSkin() : getFallbackSkin(player, onlineMode));
+        });
+        //player has joined, so skin is saved even if it is resolved after login timeout and used on next join
+        resolved.thenCompose(ResolvedSkin::getToSave).thenAccept(skin -> {
+            if (skin != null) {
+                dataBaseUtils.saveUser(player.getUsername(), skin);
+            }
+        });
+        ScheduledTask deadline = server.getScheduler()
+                .buildTask(this, () -> {
+                    if (toApply.complete(getFallbackSkin(player, onlineMode))) {
+                        loginFallbacks.increment();
+                    }
+                })
+                .delay(config.getNode("login-timeout").getLong(3000), TimeUnit.MILLISECONDS)
+                .schedule();
+        return EventTask.resumeWhenComplete(toApply.thenAccept(skin -> {
+            deadline.cancel();
+            loginTimer.recordSince(start);
             if (skin != null) {
                 SkinApplier.applySkin(player, skin.getProperty());
-                if (!maybeCached.isPresent()) {
-                    service.execute(() -> dataBaseUtils.saveUser(player.getUsername(), skin));
-                }
             }
-        }
+        }));
+    }
+
+    /**
+     * Resolves skin without saving it, so it can be used for prefetches of players who may not join
+     */
+    private CompletableFuture<ResolvedSkin> resolveSkin(String name, boolean onlineMode) {
+        return skinFetcher.getPlayerSkinFromDatabaseAsync(name).thenCompose(maybeCached -> {
+            if (maybeCached.isPresent() || onlineMode) {
+                return CompletableFuture.completedFuture(new ResolvedSkin(maybeCached.orElse(null)));
+            }
+            if (skinFetcher.getScheduler().isOverloaded() && !defaultSkins.isEmpty()) {
+                //joining players already wait too long, so this one gets default skin now and own skin on next join
+                FetchResult defaultSkin = defaultSkins.select(name);
+                deferredLogins.increment();
+                return CompletableFuture.completedFuture(new ResolvedSkin(defaultSkin,
+                        fetch(name, Priority.BACKGROUND, defaultSkin).thenCompose(ResolvedSkin::getToSave)));
+            }
+            return fetch(name, Priority.LOGIN, null);
+        });
+    }
+
+    /**
+     * Fetches skin of a player who is not stored yet.
+     * Default skin is not saved in hash mode, it is selected again on every join and follows changes of default skins
+     *
+     * @param defaultSkin - skin which is used if player has no skin, selected from default skins if null
+     */
+    private CompletableFuture<ResolvedSkin> fetch(String name, Priority priority, FetchResult defaultSkin) {
+        return skinFetcher.fetchSkin(name, true, priority).thenApply(result -> {
+            FetchResult skin = result.orElseGet(() -> defaultSkin == null ? defaultSkins.select(name) : defaultSkin);
+            boolean save = skin != null && (result.isPresent() || !defaultSkins.isStable());
+            return new ResolvedSkin(skin, save ? CompletableFuture.completedFuture(skin) : null);
+        });
+    }
+
+    private FetchResult getFallbackSkin(Player player, boolean onlineMode) {
+        return onlineMode ? null : defaultSkins.select(player.getUsername());
     }
 
     private boolean loadConfig() {
@@ -133,23 +259,40 @@ public class SimpleSkins {
         return true;
     }
 
-    private void initDefaultSkins() throws ObjectMappingException {
-        logger.info("Loading default skins");
-        List<FetchResult> skins = new ArrayList<>();
-        List<Future<?>> futures = new ArrayList<>();
-        for (String user : config.getNode("default-skins").getList(TypeToken.of(String.class))) {
-            futures.add(service.submit(() -> skinFetcher.fetchSkin(user, false)
-                    .ifPresent(skins::add)));
-        }
-        for (Future<?> future : futures) {
+    private void initMetrics() {
+        ConfigurationNode node = config.getNode("metrics");
+        if (node.getNode("jmx").getBoolean(true)) {
+            try {
+                this.metricsBean = new MetricsMBean(metrics);
+            } catch (Exception ex) {
+                logger.warn("Can not register metrics MBean", ex);
+            }
+        }
+        if (node.getNode("prometheus", "enabled").getBoolean(false)) {
+            int port = node.getNode("prometheus", "port").getInt(9225);
             try {
-                future.get();
-            } catch (InterruptedException | ExecutionException ex) {
-                ex.printStackTrace();
+                this.prometheusExporter = new PrometheusExporter(metrics, port);
+                logger.info("Metrics are available on http://127.0.0.1:{}/metrics", port);
+            } catch (IOException ex) {
+                logger.warn("Can not start metrics endpoint on port {}", port, ex);
             }
         }
-        this.defaultSkins = new RoundIterator<>(skins);
-        logger.info("Default skins loaded");
+    }
+
+    private void initDefaultSkins() throws ObjectMappingException {
+        List<String> entries = config.getNode("default-skins").getList(TypeToken.of(String.class));
+        long maxAge = TimeUnit.HOURS.toMillis(config.getNode("default-skins-max-age").getLong(24));
+        this.defaultSkinPool = new DefaultSkinPool(this, defaultSkins, entries, maxAge);
+    }
+
+    private DefaultSkinSelector.Mode getSelectionMode() {
+        String mode = config.getNode("default-skins-selection").getString("round-robin");
+        try {
+            return DefaultSkinSelector.Mode.fromConfig(mode);
+        } catch (IllegalArgumentException ex) {
+            logger.warn("Unknown default skins selection {}, using round-robin", mode);
+            return DefaultSkinSelector.Mode.ROUND_ROBIN;
+        }
     }
 
     public Logger getLogger() {
@@ -164,8 +307,12 @@ public class SimpleSkins {
         return config;
     }
 
-    public ExecutorService getExecutorService() {
-        return service;
+    public PluginExecutors getExecutors() {
+        return executors;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
     }
 
     public Path getDataDirectory() {
@@ -181,6 +328,18 @@ public class SimpleSkins {
     }
 
     public Component deserialize(String... configKey) {
-        return LegacyComponentSerializer.legacyAmpersand().deserialize(config.getNode(configKey).getString());
+        return LegacyComponentSerializer.legacyAmpersand().deserialize(config.getNode((Object[]) configKey).getString());
+    }
+
+    /**
+     * @param configKey    - path to the message
+     * @param placeholders - pairs of placeholder and its value
+     */
+    public Component deserialize(String[] configKey, Object... placeholders) {
+        String message = config.getNode((Object[]) configKey).getString("");
+        for (int i = 0; i + 1 < placeholders.length; i += 2) {
+            message = message.replace(String.valueOf(placeholders[i]), String.valueOf(placeholders[i + 1]));
+        }
+        return LegacyComponentSerializer.legacyAmpersand().deserialize(message);
     }
 }
@@ -0,0 +1,184 @@
+package ru.leymooo.simpleskins.command;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.velocitypowered.api.proxy.Player;
+import ninja.leaping.configurate.ConfigurationNode;
+import ru.leymooo.simpleskins.SimpleSkins;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Admission of skin commands. Every player has at most one command in queue or in progress,
+ * commands are started in order of arrival and only a limited amount of them fetch skins at the same time,
+ * so command spam does not take API quota and threads from joining players.
+ */
+public class CommandAdmission {
+
+    private final SimpleSkins plugin;
+    private final int maxConcurrent;
+    private final int maxQueue;
+    private final long cooldown;
+    private final Map<UUID, Ticket> tickets = new ConcurrentHashMap<>();
+    private final Cache<UUID, Long> finished;
+    //guarded by this
+    private final Deque<Ticket> queue = new ArrayDeque<>();
+    private int running;
+
+    /**
+     * @param config - 'commands' section of config
+     */
+    public CommandAdmission(SimpleSkins plugin, ConfigurationNode config) {
+        this.plugin = plugin;
+        this.maxConcurrent = Math.max(1, config.getNode("max-concurrent-fetches").getInt(4));
+        this.maxQueue = Math.max(0, config.getNode("max-queue").getInt(50));
+        this.cooldown = TimeUnit.SECONDS.toMillis(Math.max(0, config.getNode("cooldown").getLong(10)));
+        this.finished = CacheBuilder.newBuilder().expireAfterWrite(Math.max(1, cooldown), TimeUnit.MILLISECONDS).build();
+    }
+
+    /**
+     * Queues command of the player. Player is told about the result, so caller only needs to start the command.
+     *
+     * @param command - starts the command, returned future is completed when command is finished
+     */
+    public void submit(Player player, Supplier<CompletableFuture<?>> command) {
+        UUID id = player.getUniqueId();
+        Ticket current = tickets.get(id);
+        if (current != null) {
+            sendState(player, current);
+            return;
+        }
+        long remaining = getCooldownRemaining(player);
+        if (remaining > 0) {
+            player.sendMessage(plugin.deserialize(new String[]{"messages", "cooldown"},
+                    "{seconds}", TimeUnit.MILLISECONDS.toSeconds(remaining + 999)));
+            return;
+        }
+        Ticket ticket = new Ticket(player, command);
+        if (tickets.putIfAbsent(id, ticket) != null) {
+            player.sendMessage(plugin.deserialize("messages", "working"));
+            return;
+        }
+        int position;
+        synchronized (this) {
+            if (queue.size() >= maxQueue && running >= maxConcurrent) {
+                position = -1;
+            } else {
+                queue.addLast(ticket);
+                position = queue.size();
+            }
+        }
+        if (position < 0) {
+            tickets.remove(id, ticket);
+            player.sendMessage(plugin.deserialize("messages", "busy"));
+            return;
+        }
+        drain();
+        if (!ticket.started) {
+            sendState(player, ticket);
+        }
+    }
+
+    private long getCooldownRemaining(Player player) {
+        if (cooldown == 0 || player.hasPermission("simpleskins.cooldown.bypass")) {
+            return 0;
+        }
+        Long last = finished.getIfPresent(player.getUniqueId());
+        return last == null ? 0 : last + cooldown - System.currentTimeMillis();
+    }
+
+    private void sendState(Player player, Ticket ticket) {
+        int position = getPosition(ticket);
+        if (position > 0) {
+            player.sendMessage(plugin.deserialize(new String[]{"messages", "queued"}, "{position}", position));
+        } else {
+            player.sendMessage(plugin.deserialize("messages", "working"));
+        }
+    }
+
+    /**
+     * @return position of the ticket in queue starting from 1 or 0 if it is not in queue
+     */
+    private synchronized int getPosition(Ticket ticket) {
+        int position = 1;
+        for (Ticket queued : queue) {
+            if (queued == ticket) {
+                return position;
+            }
+            position++;
+        }
+        return 0;
+    }
+
+    private void drain() {
+        while (true) {
+            Ticket ticket;
+            synchronized (this) {
+                if (running >= maxConcurrent || queue.isEmpty()) {
+                    return;
+                }
+                ticket = queue.pollFirst();
+                running++;
+            }
+            ticket.started = true;
+            try {
+                plugin.getExecutors().getCommand().execute(() -> start(ticket));
+            } catch (RejectedExecutionException ex) {
+                ticket.player.sendMessage(plugin.deserialize("messages", "busy"));
+                finish(ticket, false);
+            }
+        }
+    }
+
+    private void start(Ticket ticket) {
+        if (!ticket.player.isActive()) {
+            finish(ticket, false);
+            return;
+        }
+        CompletableFuture<?> future;
+        try {
+            future = ticket.command.get();
+        } catch (RuntimeException ex) {
+            plugin.getLogger().error("Skin command of {} failed", ticket.player.getUsername(), ex);
+            finish(ticket, true);
+            return;
+        }
+        future.whenComplete((ignored, ex) -> {
+            if (ex != null) {
+                plugin.getLogger().error("Skin command of {} failed", ticket.player.getUsername(), ex);
+            }
+            finish(ticket, true);
+        });
+    }
+
+    private void finish(Ticket ticket, boolean executed) {
+        synchronized (this) {
+            running--;
+        }
+        if (executed) {
+            finished.put(ticket.player.getUniqueId(), System.currentTimeMillis());
+        }
+        tickets.remove(ticket.player.getUniqueId(), ticket);
+        drain();
+    }
+
+    private static class Ticket {
+
+        private final Player player;
+        private final Supplier<CompletableFuture<?>> command;
+        private volatile boolean started;
+
+        private Ticket(Player player, Supplier<CompletableFuture<?>> command) {
+            this.player = player;
+            this.command = command;
+        }
+    }
+}
@@ -5,23 +5,32 @@ import com.velocitypowered.api.command.SimpleCommand;
 import com.velocitypowered.api.proxy.Player;
 import ru.leymooo.simpleskins.SimpleSkins;
 import ru.leymooo.simpleskins.utils.SkinApplier;
-import ru.leymooo.simpleskins.utils.skinfetch.FetchResult;
+import ru.leymooo.simpleskins.utils.SkinTransfer;
+import ru.leymooo.simpleskins.utils.skinfetch.ProviderHealth;
 
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author mikim
  */
 public class SkinCommand implements SimpleCommand {
 
+    //names which are never treated as skin names, skin with such name is set by '/skin set <name>'
+    private static final Set<String> ADMIN_SUBCOMMANDS = new HashSet<>(Arrays.asList("providers", "stats", "export", "import"));
     private final SimpleSkins plugin;
-    private final Set<CommandSource> working = new HashSet<>();
+    private final CommandAdmission admission;
+    private final SkinTransfer transfer;
 
     public SkinCommand(SimpleSkins plugin) {
         this.plugin = plugin;
+        this.admission = new CommandAdmission(plugin, plugin.getConfig().getNode("commands"));
+        this.transfer = new SkinTransfer(plugin, plugin.getConfig().getNode("database"));
     }
 
     @Override
@@ -32,47 +41,93 @@ public class SkinCommand implements SimpleCommand {
             cs.sendMessage(plugin.deserialize("messages", "no-permission"));
             return;
         }
+        boolean admin = cs.hasPermission("simpleskins.admin");
+        if (args.length > 0 && ADMIN_SUBCOMMANDS.contains(args[0].toLowerCase())) {
+            if (!admin) {
+                cs.sendMessage(plugin.deserialize("messages", "admin-no-permission"));
+            } else if (!executeAdmin(cs, args)) {
+                cs.sendMessage(plugin.deserialize("messages", "help-admin"));
+            }
+            return;
+        }
         if (cs instanceof Player) {
-            if (args.length == 0) {
+            if (args.length == 0 || (args[0].equalsIgnoreCase("set") && args.length != 2)) {
                 cs.sendMessage(plugin.deserialize("messages", "help"));
-                return;
-            }
-            if (working.contains(cs)) {
-                cs.sendMessage(plugin.deserialize("messages", "working"));
+                if (admin) {
+                    cs.sendMessage(plugin.deserialize("messages", "help-admin"));
+                }
                 return;
             }
             Player player = (Player) cs;
-            working.add(cs);
-            if (args[0].equalsIgnoreCase("update")) {
-                plugin.getExecutorService().execute(() -> {
-                    Optional<UUID> uuid = plugin.getDataBaseUtils().getUuid(player.getUsername());
-                    if (uuid.isPresent()) {
-                        cs.sendMessage(plugin.deserialize("messages", "fetching"));
-                        Optional<FetchResult> newSkin = plugin.getSkinFetcher().fetchSkin(player, uuid.get());
-                        newSkin.ifPresent(skin -> {
-                            cs.sendMessage(plugin.deserialize("messages", "skin-changed"));
-                            SkinApplier.applySkin(player, skin.getProperty());
-                        });
-                    } else {
-                        cs.sendMessage(plugin.deserialize("messages", "skin-update-error"));
-                    }
-                    working.remove(cs);
-                });
-                return;
+            if (args[0].equalsIgnoreCase("set")) {
+                admission.submit(player, () -> setSkin(player, args[1]));
+            } else {
+                admission.submit(player, args[0].equalsIgnoreCase("update") ? () -> updateSkin(player) : () -> setSkin(player, args[0]));
             }
-            plugin.getExecutorService().execute(() -> {
-                cs.sendMessage(plugin.deserialize("messages", "fetching"));
-                Optional<FetchResult> newSkin = plugin.getSkinFetcher().fetchSkin(player, args[0].equalsIgnoreCase("reset") ? player.getUsername()
-                        : args[0]);
+        } else if (args.length == 0 && admin) {
+            cs.sendMessage(plugin.deserialize("messages", "help-admin"));
+        }
+    }
+
+    private CompletableFuture<?> updateSkin(Player player) {
+        Optional<UUID> uuid = plugin.getDataBaseUtils().getUuid(player.getUsername());
+        if (!uuid.isPresent()) {
+            player.sendMessage(plugin.deserialize("messages", "skin-update-error"));
+            return CompletableFuture.completedFuture(null);
+        }
+        player.sendMessage(plugin.deserialize("messages", "fetching"));
+        return plugin.getSkinFetcher().fetchSkin(player, uuid.get()).thenAccept(newSkin ->
                 newSkin.ifPresent(skin -> {
-                    plugin.getDataBaseUtils().saveUser(player.getUsername(), skin);
+                    player.sendMessage(plugin.deserialize("messages", "skin-changed"));
                     SkinApplier.applySkin(player, skin.getProperty());
-                    cs.sendMessage(plugin.deserialize("messages", "skin-changed"));
+                }));
+    }
+
+    /**
+     * @param skinName - name or UUID of the skin owner, 'reset' sets own skin of the player
+     */
+    private CompletableFuture<?> setSkin(Player player, String skinName) {
+        player.sendMessage(plugin.deserialize("messages", "fetching"));
+        return plugin.getSkinFetcher().fetchSkin(player, skinName.equalsIgnoreCase("reset") ? player.getUsername() : skinName)
+                .thenAccept(newSkin ->
+                        newSkin.ifPresent(skin -> {
+                            plugin.getDataBaseUtils().saveUser(player.getUsername(), skin);
+                            SkinApplier.applySkin(player, skin.getProperty());
+                            player.sendMessage(plugin.deserialize("messages", "skin-changed"));
+                        }));
+    }
 
-                });
-                working.remove(cs);
-            });
+    /**
+     * @return false if arguments of the subcommand are wrong
+     */
+    private boolean executeAdmin(CommandSource cs, String[] args) {
+        if (args[0].equalsIgnoreCase("providers")) {
+            for (ProviderHealth health : plugin.getSkinFetcher().getProviderRouter().getProviders()) {
+                cs.sendMessage(plugin.deserialize(new String[]{"messages", "provider-status"},
+                        "{name}", health.getProvider().getName(),
+                        "{state}", health.getState(),
+                        "{latency}", String.format("%.1f", health.getLatency()),
+                        "{errors}", String.format("%.1f", health.getErrorRate() * 100),
+                        "{requests}", health.getRequests(),
+                        "{failures}", health.getFailures()));
+            }
+            return true;
+        }
+        if (args[0].equalsIgnoreCase("stats")) {
+            for (Map.Entry<String, String> metric : plugin.getMetrics().describe().entrySet()) {
+                cs.sendMessage(plugin.deserialize(new String[]{"messages", "stats-line"},
+                        "{name}", metric.getKey(),
+                        "{value}", metric.getValue()));
+            }
+            return true;
+        }
+        if (args.length == 2 && (args[0].equalsIgnoreCase("export") || args[0].equalsIgnoreCase("import"))) {
+            String error = args[0].equalsIgnoreCase("export") ? transfer.startExport(cs, args[1]) : transfer.startImport(cs, args[1]);
+            cs.sendMessage(plugin.deserialize(new String[]{"messages", error == null ? "transfer-started" : error},
+                    "{file}", args[1]));
+            return true;
         }
+        return false;
     }
 
     @Override
@@ -0,0 +1,38 @@
+package ru.leymooo.simpleskins.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic counter which is cheap to update from many threads
+ */
+public class Counter implements Metric {
+
+    private final LongAdder value = new LongAdder();
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+
+    @Override
+    public String getType() {
+        return "counter";
+    }
+
+    @Override
+    public void collect(String name, String labels, SampleConsumer samples) {
+        samples.accept(name, labels, get());
+    }
+
+    @Override
+    public String describe() {
+        return String.valueOf(get());
+    }
+}
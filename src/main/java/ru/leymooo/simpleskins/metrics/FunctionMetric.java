@@ -0,0 +1,33 @@
+package ru.leymooo.simpleskins.metrics;
+
+import java.util.function.DoubleSupplier;
+
+/**
+ * Metric which value is read from other component, like size of a queue or stats of a cache
+ */
+class FunctionMetric implements Metric {
+
+    private final String type;
+    private final DoubleSupplier value;
+
+    FunctionMetric(String type, DoubleSupplier value) {
+        this.type = type;
+        this.value = value;
+    }
+
+    @Override
+    public String getType() {
+        return type;
+    }
+
+    @Override
+    public void collect(String name, String labels, SampleConsumer samples) {
+        samples.accept(name, labels, value.getAsDouble());
+    }
+
+    @Override
+    public String describe() {
+        double current = value.getAsDouble();
+        return current == Math.rint(current) ? String.valueOf((long) current) : String.format("%.2f", current);
+    }
+}
@@ -0,0 +1,27 @@
+package ru.leymooo.simpleskins.metrics;
+
+/**
+ * Value registered in {@link Metrics}
+ */
+public interface Metric {
+
+    /**
+     * @return prometheus type of the metric: counter, gauge or histogram
+     */
+    String getType();
+
+    /**
+     * Reports samples of this metric. Histograms report more than one sample
+     */
+    void collect(String name, String labels, SampleConsumer samples);
+
+    /**
+     * @return short human readable value for '/skin stats'
+     */
+    String describe();
+
+    interface SampleConsumer {
+
+        void accept(String name, String labels, double value);
+    }
+}
@@ -0,0 +1,129 @@
+package ru.leymooo.simpleskins.metrics;
+
+import com.google.common.cache.CacheStats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Registry of plugin metrics. Metrics are identified by name and labels, labels are passed as pairs of name and value.
+ * Callers on hot paths should keep returned counters and timers instead of looking them up every time.
+ */
+public class Metrics {
+
+    //sorted by id, so all labels of the same metric are next to each other
+    private final ConcurrentNavigableMap<String, Entry> metrics = new ConcurrentSkipListMap<>();
+
+    public Counter counter(String name, String... labels) {
+        return register(name, labels, Counter::new, Counter.class);
+    }
+
+    public Timer timer(String name, String... labels) {
+        return register(name, labels, Timer::new, Timer.class);
+    }
+
+    /**
+     * Registers counter which is maintained by other component, like hits of a cache
+     */
+    public void counter(String name, DoubleSupplier value, String... labels) {
+        register(name, labels, () -> new FunctionMetric("counter", value), FunctionMetric.class);
+    }
+
+    public void gauge(String name, DoubleSupplier value, String... labels) {
+        register(name, labels, () -> new FunctionMetric("gauge", value), FunctionMetric.class);
+    }
+
+    /**
+     * Registers hit, miss and eviction counters of a guava cache which records stats
+     */
+    public void cacheStats(String cache, Supplier<CacheStats> stats) {
+        counter("simpleskins_cache_hits_total", () -> stats.get().hitCount(), "cache", cache);
+        counter("simpleskins_cache_misses_total", () -> stats.get().missCount(), "cache", cache);
+        counter("simpleskins_cache_evictions_total", () -> stats.get().evictionCount(), "cache", cache);
+    }
+
+    /**
+     * Reports all samples in prometheus text format
+     */
+    public void writePrometheus(StringBuilder out) {
+        String lastName = null;
+        for (Entry entry : metrics.values()) {
+            if (!entry.name.equals(lastName)) {
+                out.append("# TYPE ").append(entry.name).append(' ').append(entry.metric.getType()).append('\n');
+                lastName = entry.name;
+            }
+            entry.metric.collect(entry.name, entry.labels, (name, labels, value) -> {
+                out.append(name);
+                if (!labels.isEmpty()) {
+                    out.append('{').append(labels).append('}');
+                }
+                out.append(' ').append(value).append('\n');
+            });
+        }
+    }
+
+    /**
+     * @return all samples by their prometheus ids
+     */
+    public Map<String, Double> getSamples() {
+        Map<String, Double> samples = new LinkedHashMap<>();
+        for (Entry entry : metrics.values()) {
+            entry.metric.collect(entry.name, entry.labels,
+                    (name, labels, value) -> samples.put(labels.isEmpty() ? name : name + "{" + labels + "}", value));
+        }
+        return samples;
+    }
+
+    /**
+     * @return human readable values of metrics by their ids
+     */
+    public Map<String, String> describe() {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Entry> entry : metrics.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().metric.describe());
+        }
+        return values;
+    }
+
+    private <T extends Metric> T register(String name, String[] labels, Supplier<? extends Metric> factory, Class<T> type) {
+        String labelString = formatLabels(labels);
+        String id = labelString.isEmpty() ? name : name + "{" + labelString + "}";
+        Entry entry = metrics.computeIfAbsent(id, ignored -> new Entry(name, labelString, factory.get()));
+        if (!type.isInstance(entry.metric)) {
+            throw new IllegalArgumentException("Metric " + id + " is already registered as " + entry.metric.getType());
+        }
+        return type.cast(entry.metric);
+    }
+
+    private static String formatLabels(String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be pairs of name and value");
+        }
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        }
+        return builder.toString();
+    }
+
+    private static class Entry {
+
+        private final String name;
+        private final String labels;
+        private final Metric metric;
+
+        private Entry(String name, String labels, Metric metric) {
+            this.name = name;
+            this.labels = labels;
+            this.metric = metric;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package ru.leymooo.simpleskins.metrics;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read only MBean with an attribute for every sample of {@link Metrics}
+ */
+public class MetricsMBean implements DynamicMBean {
+
+    private final Metrics metrics;
+    private final ObjectName objectName;
+
+    public MetricsMBean(Metrics metrics) throws Exception {
+        this.metrics = metrics;
+        this.objectName = new ObjectName("ru.leymooo.simpleskins:type=Metrics");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(objectName)) {
+            server.unregisterMBean(objectName);
+        }
+        server.registerMBean(this, objectName);
+    }
+
+    public void unregister() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (Exception ignored) {
+        }
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Double value = metrics.getSamples().get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Double> samples = metrics.getSamples();
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            Double value = samples.get(attribute);
+            if (value != null) {
+                list.add(new Attribute(attribute, value));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) {
+        throw new UnsupportedOperationException("Metrics are read only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException("No operations");
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        //metrics with labels are registered on first use, so attributes are listed every time
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (String sample : metrics.getSamples().keySet()) {
+            attributes.add(new MBeanAttributeInfo(sample, Double.class.getName(), sample, true, false, false));
+        }
+        return new MBeanInfo(getClass().getName(), "SimpleSkins metrics", attributes.toArray(new MBeanAttributeInfo[0]),
+                null, new MBeanOperationInfo[0], null);
+    }
+}
@@ -0,0 +1,43 @@
+package ru.leymooo.simpleskins.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serves metrics in prometheus text format on http://127.0.0.1:port/metrics.
+ * Only local connections are possible, use reverse proxy or local agent to scrape from other hosts.
+ */
+public class PrometheusExporter {
+
+    private final Metrics metrics;
+    private final HttpServer server;
+
+    public PrometheusExporter(Metrics metrics, int port) throws IOException {
+        this.metrics = metrics;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.server.createContext("/metrics", this::handle);
+        //default executor handles requests in the server thread, scrapes are rare and cheap
+        this.server.start();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        StringBuilder text = new StringBuilder();
+        metrics.writePrometheus(text);
+        byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    public void close() {
+        server.stop(0);
+    }
+}
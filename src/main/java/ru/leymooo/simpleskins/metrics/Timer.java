@@ -0,0 +1,94 @@
+package ru.leymooo.simpleskins.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with fixed buckets. Reported in seconds like prometheus client histograms.
+ */
+public class Timer implements Metric {
+
+    //upper bounds of buckets in milliseconds
+    private static final long[] BUCKETS = {1, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+    private final LongAdder[] counts = new LongAdder[BUCKETS.length + 1];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    public Timer() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        int bucket = 0;
+        while (bucket < BUCKETS.length && nanos > TimeUnit.MILLISECONDS.toNanos(BUCKETS[bucket])) {
+            bucket++;
+        }
+        counts[bucket].increment();
+        count.increment();
+        sumNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    /**
+     * @param startNanos - value of {@link System#nanoTime()} when timed operation was started
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getMeanMillis() {
+        long total = count.sum();
+        return total == 0 ? 0 : sumNanos.sum() / 1e6 / total;
+    }
+
+    /**
+     * @return upper bound of the bucket which contains requested percentile, not more than the slowest record
+     */
+    public double getPercentileMillis(double percentile) {
+        long total = count.sum();
+        if (total == 0) {
+            return 0;
+        }
+        double max = maxNanos.get() / 1e6;
+        long rank = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS.length; i++) {
+            seen += counts[i].sum();
+            if (seen >= rank) {
+                return Math.min(BUCKETS[i], max);
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public String getType() {
+        return "histogram";
+    }
+
+    @Override
+    public void collect(String name, String labels, SampleConsumer samples) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS.length; i++) {
+            cumulative += counts[i].sum();
+            samples.accept(name + "_bucket", prefix + "le=\"" + BUCKETS[i] / 1000.0 + "\"", cumulative);
+        }
+        samples.accept(name + "_bucket", prefix + "le=\"+Inf\"", cumulative + counts[BUCKETS.length].sum());
+        samples.accept(name + "_sum", labels, sumNanos.sum() / 1e9);
+        samples.accept(name + "_count", labels, count.sum());
+    }
+
+    @Override
+    public String describe() {
+        return String.format("count %d, mean %.1f ms, p99 %.1f ms", getCount(), getMeanMillis(), getPercentileMillis(0.99));
+    }
+}
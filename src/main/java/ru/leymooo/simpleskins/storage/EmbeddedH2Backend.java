@@ -0,0 +1,60 @@
+package ru.leymooo.simpleskins.storage;
+
+import ninja.leaping.configurate.ConfigurationNode;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+/**
+ * H2 database file in the data directory of the plugin. Used by one proxy only.
+ */
+public class EmbeddedH2Backend implements StorageBackend {
+
+    private final Path file;
+    private final String url;
+
+    /**
+     * @param config - 'database.h2' section of config
+     */
+    public EmbeddedH2Backend(Path dataDirectory, ConfigurationNode config) throws SQLException {
+        try {
+            Class.forName("org.h2.Driver");
+        } catch (ClassNotFoundException ex) {
+            throw new SQLException("H2 driver is not available", ex);
+        }
+        this.file = dataDirectory.resolve("users.mv.db");
+        this.url = "jdbc:h2:." + File.separator + dataDirectory.toString() + File.separator + "users;mode=MySQL"
+                + ";CACHE_SIZE=" + config.getNode("cache-size").getInt(16384)
+                + ";WRITE_DELAY=" + config.getNode("write-delay").getInt(500);
+    }
+
+    /**
+     * @return file of the database, it is created on first connection
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public String getDescription() {
+        return url;
+    }
+
+    @Override
+    public Connection connect() throws SQLException {
+        return DriverManager.getConnection(url, null, null);
+    }
+
+    @Override
+    public SqlDialect getDialect() {
+        return SqlDialect.H2;
+    }
+
+    @Override
+    public boolean isShared() {
+        return false;
+    }
+}
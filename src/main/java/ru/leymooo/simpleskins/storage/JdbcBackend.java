@@ -0,0 +1,103 @@
+package ru.leymooo.simpleskins.storage;
+
+import ninja.leaping.configurate.ConfigurationNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * SQL database which is shared by several proxies, like MySQL, PostgreSQL or H2 in server mode.
+ * Driver is taken from the classpath or from jars in the 'drivers' folder of the plugin.
+ */
+public class JdbcBackend implements StorageBackend {
+
+    private final String url;
+    private final Properties properties = new Properties();
+    private final SqlDialect dialect;
+    private final Driver driver;
+    private URLClassLoader driverLoader;
+
+    public JdbcBackend(ConfigurationNode config, Path dataDirectory) throws SQLException {
+        this.url = config.getNode("url").getString("");
+        if (url.isEmpty()) {
+            throw new SQLException("database.sql.url is not set");
+        }
+        this.properties.setProperty("user", config.getNode("user").getString(""));
+        this.properties.setProperty("password", config.getNode("password").getString(""));
+        this.dialect = SqlDialect.fromConfig(config.getNode("dialect").getString("auto"), url);
+        String driverClass = config.getNode("driver").getString("");
+        this.driver = driverClass.isEmpty() ? DriverManager.getDriver(url) : loadDriver(driverClass, dataDirectory.resolve("drivers"));
+    }
+
+    private Driver loadDriver(String driverClass, Path driversDirectory) throws SQLException {
+        try {
+            Class<?> type;
+            try {
+                type = Class.forName(driverClass, true, getClass().getClassLoader());
+            } catch (ClassNotFoundException ex) {
+                driverLoader = new URLClassLoader(findJars(driversDirectory), getClass().getClassLoader());
+                type = Class.forName(driverClass, true, driverLoader);
+            }
+            return (Driver) type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException | MalformedURLException ex) {
+            throw new SQLException("Can not load JDBC driver " + driverClass, ex);
+        }
+    }
+
+    private static URL[] findJars(Path directory) throws MalformedURLException {
+        List<URL> jars = new ArrayList<>();
+        File[] files = directory.toFile().listFiles((dir, name) -> name.endsWith(".jar"));
+        if (files != null) {
+            for (File file : files) {
+                jars.add(file.toURI().toURL());
+            }
+        }
+        return jars.toArray(new URL[0]);
+    }
+
+    @Override
+    public String getDescription() {
+        //parameters of the url can contain credentials
+        return dialect + " database " + url.split("[?;]", 2)[0];
+    }
+
+    @Override
+    public Connection connect() throws SQLException {
+        Connection connection = driver.connect(url, properties);
+        if (connection == null) {
+            throw new SQLException("Driver " + driver.getClass().getName() + " does not accept " + getDescription());
+        }
+        return connection;
+    }
+
+    @Override
+    public SqlDialect getDialect() {
+        return dialect;
+    }
+
+    @Override
+    public boolean isShared() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if (driverLoader != null) {
+            try {
+                driverLoader.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
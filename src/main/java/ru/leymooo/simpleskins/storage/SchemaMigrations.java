@@ -0,0 +1,200 @@
+package ru.leymooo.simpleskins.storage;
+
+import org.slf4j.Logger;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Versioned changes of the database schema. Applied versions are recorded in the SchemaVersion table,
+ * so every migration runs once. New migrations are appended to the end with the next version.
+ * Steps skip changes which are already made, because proxies sharing a database may migrate it at the same time.
+ */
+public class SchemaMigrations {
+
+    private final SqlDialect dialect;
+    private final List<Migration> migrations = new ArrayList<>();
+
+    public SchemaMigrations(SqlDialect dialect) {
+        this.dialect = dialect;
+        add(1, "create users and name cache", st -> {
+            st.execute("CREATE TABLE IF NOT EXISTS " + q("Users") + " ("
+                    + q("Name") + " VARCHAR(16) NOT NULL PRIMARY KEY,"
+                    + q("SkinUUID") + " " + dialect.uuidType() + ","
+                    + q("SkinValue") + " TEXT NOT NULL,"
+                    + q("SkinSignature") + " TEXT NOT NULL,"
+                    + q("Timestamp") + " BIGINT NOT NULL)");
+            st.execute("CREATE TABLE IF NOT EXISTS " + q("NameCache") + " ("
+                    + q("Name") + " VARCHAR(16) NOT NULL PRIMARY KEY,"
+                    + q("UUID") + " " + dialect.uuidType() + " NOT NULL,"
+                    + q("Timestamp") + " BIGINT NOT NULL)");
+        });
+        add(2, "move textures to separate table", st -> {
+            st.execute("CREATE TABLE IF NOT EXISTS " + q("Textures") + " ("
+                    + q("Hash") + " VARCHAR(64) NOT NULL PRIMARY KEY,"
+                    + q("SkinUUID") + " " + dialect.uuidType() + ","
+                    + q("Payload") + " " + dialect.binaryType() + " NOT NULL)");
+            //databases created before versions were recorded may have the column already
+            if (addColumn(st, "Users", "TextureHash", "VARCHAR(64)")) {
+                //old rows keep textures in Users until they are moved by TextureMaintenance
+                st.execute(dialect.dropNotNull("Users", "SkinValue", "TEXT"));
+                st.execute(dialect.dropNotNull("Users", "SkinSignature", "TEXT"));
+            }
+        });
+        add(3, "add indexes for timestamp, skin uuid and texture queries", st -> {
+            createIndex(st, "idx_users_timestamp", "Users", "Timestamp", "Name");
+            createIndex(st, "idx_users_skin_uuid", "Users", "SkinUUID");
+            createIndex(st, "idx_users_texture", "Users", "TextureHash");
+        });
+        add(4, "add update time of textures", st -> {
+            //unused textures are removed only when they were not written for a while
+            addColumn(st, "Textures", "UpdatedAt", "BIGINT DEFAULT 0 NOT NULL");
+        });
+    }
+
+    private void add(int version, String description, Step step) {
+        migrations.add(new Migration(version, description, step));
+    }
+
+    /**
+     * Applies migrations which are newer than the recorded version
+     *
+     * @return version of the schema
+     */
+    public int migrate(Connection connection, Logger logger) throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS " + q("SchemaVersion") + " ("
+                    + q("Version") + " INT NOT NULL PRIMARY KEY,"
+                    + q("Description") + " VARCHAR(255) NOT NULL,"
+                    + q("AppliedAt") + " BIGINT NOT NULL)");
+            int current = 0;
+            try (ResultSet set = st.executeQuery("SELECT MAX(" + q("Version") + ") FROM " + q("SchemaVersion"))) {
+                if (set.next()) {
+                    current = set.getInt(1);
+                }
+            }
+            int initial = current;
+            for (Migration migration : migrations) {
+                if (migration.version <= current) {
+                    continue;
+                }
+                logger.info("Applying database migration {}: {}", migration.version, migration.description);
+                migration.step.apply(st);
+                try (PreparedStatement ps = connection.prepareStatement("INSERT INTO " + q("SchemaVersion") + " ("
+                        + q("Version") + "," + q("Description") + "," + q("AppliedAt") + ") VALUES (?,?,?)")) {
+                    ps.setInt(1, migration.version);
+                    ps.setString(2, migration.description);
+                    ps.setLong(3, System.currentTimeMillis());
+                    ps.executeUpdate();
+                } catch (SQLException ex) {
+                    if (!isRecorded(connection, migration.version)) {
+                        throw ex;
+                    }
+                    logger.info("Database migration {} is recorded by another proxy", migration.version);
+                }
+                current = migration.version;
+            }
+            if (current != initial) {
+                logger.info("Database schema upgraded from version {} to {}", initial, current);
+            }
+            return current;
+        }
+    }
+
+    private boolean isRecorded(Connection connection, int version) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("SELECT 1 FROM " + q("SchemaVersion")
+                + " WHERE " + q("Version") + " = ?")) {
+            ps.setInt(1, version);
+            try (ResultSet set = ps.executeQuery()) {
+                return set.next();
+            }
+        }
+    }
+
+    /**
+     * @return true if the column is added by this call
+     */
+    private boolean addColumn(Statement st, String table, String column, String definition) throws SQLException {
+        if (hasColumn(st.getConnection(), table, column)) {
+            return false;
+        }
+        try {
+            st.execute("ALTER TABLE " + q(table) + " ADD COLUMN " + q(column) + " " + definition);
+            return true;
+        } catch (SQLException ex) {
+            if (hasColumn(st.getConnection(), table, column)) {
+                return false;
+            }
+            throw ex;
+        }
+    }
+
+    private void createIndex(Statement st, String name, String table, String... columns) throws SQLException {
+        if (hasIndex(st.getConnection(), table, name)) {
+            return;
+        }
+        try {
+            st.execute(dialect.createIndex(name, table, columns));
+        } catch (SQLException ex) {
+            if (!hasIndex(st.getConnection(), table, name)) {
+                throw ex;
+            }
+        }
+    }
+
+    private static boolean hasIndex(Connection connection, String table, String index) throws SQLException {
+        DatabaseMetaData meta = connection.getMetaData();
+        for (String name : new String[]{table, table.toUpperCase(), table.toLowerCase()}) {
+            try (ResultSet indexes = meta.getIndexInfo(null, null, name, false, true)) {
+                while (indexes.next()) {
+                    if (index.equalsIgnoreCase(indexes.getString("INDEX_NAME"))) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasColumn(Connection connection, String table, String column) throws SQLException {
+        DatabaseMetaData meta = connection.getMetaData();
+        for (String name : new String[]{table, table.toUpperCase(), table.toLowerCase()}) {
+            try (ResultSet columns = meta.getColumns(null, null, name, null)) {
+                while (columns.next()) {
+                    if (columns.getString("COLUMN_NAME").equalsIgnoreCase(column)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private String q(String identifier) {
+        return dialect.quote(identifier);
+    }
+
+    private interface Step {
+
+        void apply(Statement statement) throws SQLException;
+    }
+
+    private static class Migration {
+
+        private final int version;
+        private final String description;
+        private final Step step;
+
+        private Migration(int version, String description, Step step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+}
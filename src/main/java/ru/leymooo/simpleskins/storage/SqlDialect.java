@@ -0,0 +1,160 @@
+package ru.leymooo.simpleskins.storage;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * SQL differences of supported databases. Queries are built once by the caller, so dialects only build strings.
+ */
+public enum SqlDialect {
+    H2 {
+        @Override
+        public String upsert(String table, String[] columns, String key) {
+            return "MERGE INTO " + quote(table) + " (" + join(columns) + ") KEY (" + quote(key) + ") VALUES ("
+                    + placeholders(columns.length) + ")";
+        }
+
+        @Override
+        public String dropNotNull(String table, String column, String type) {
+            return "ALTER TABLE " + quote(table) + " ALTER COLUMN " + quote(column) + " SET NULL";
+        }
+    },
+    MYSQL {
+        @Override
+        public String upsert(String table, String[] columns, String key) {
+            return "INSERT INTO " + quote(table) + " (" + join(columns) + ") VALUES (" + placeholders(columns.length) + ") "
+                    + "ON DUPLICATE KEY UPDATE " + Arrays.stream(columns).filter(column -> !column.equals(key))
+                    .map(column -> quote(column) + " = VALUES(" + quote(column) + ")").collect(Collectors.joining(", "));
+        }
+
+        @Override
+        public String uuidType() {
+            return "CHAR(36)";
+        }
+
+        @Override
+        public String dropNotNull(String table, String column, String type) {
+            return "ALTER TABLE " + quote(table) + " MODIFY " + quote(column) + " " + type + " NULL";
+        }
+
+        @Override
+        public int streamingFetchSize(int fetchSize) {
+            //MySQL driver streams rows one by one only with this value
+            return Integer.MIN_VALUE;
+        }
+
+        @Override
+        public String createIndex(String name, String table, String... columns) {
+            //MySQL has no IF NOT EXISTS for indexes, SchemaMigrations checks that the index does not exist
+            return "CREATE INDEX " + name + " ON " + quote(table) + " (" + join(columns) + ")";
+        }
+
+        @Override
+        public void setUuid(PreparedStatement statement, int index, UUID uuid) throws SQLException {
+            statement.setString(index, uuid == null ? null : uuid.toString());
+        }
+
+        @Override
+        public UUID getUuid(ResultSet set, int index) throws SQLException {
+            String uuid = set.getString(index);
+            return uuid == null ? null : UUID.fromString(uuid);
+        }
+    },
+    POSTGRESQL {
+        @Override
+        public String quote(String identifier) {
+            return '"' + identifier + '"';
+        }
+
+        @Override
+        public String upsert(String table, String[] columns, String key) {
+            return "INSERT INTO " + quote(table) + " (" + join(columns) + ") VALUES (" + placeholders(columns.length) + ") "
+                    + "ON CONFLICT (" + quote(key) + ") DO UPDATE SET " + Arrays.stream(columns).filter(column -> !column.equals(key))
+                    .map(column -> quote(column) + " = EXCLUDED." + quote(column)).collect(Collectors.joining(", "));
+        }
+
+        @Override
+        public String binaryType() {
+            return "BYTEA";
+        }
+
+        @Override
+        public String dropNotNull(String table, String column, String type) {
+            return "ALTER TABLE " + quote(table) + " ALTER COLUMN " + quote(column) + " DROP NOT NULL";
+        }
+    };
+
+    public String quote(String identifier) {
+        return '`' + identifier + '`';
+    }
+
+    /**
+     * @return insert or update statement, parameters are values of columns in the same order
+     */
+    public abstract String upsert(String table, String[] columns, String key);
+
+    public String uuidType() {
+        return "UUID";
+    }
+
+    public String binaryType() {
+        return "BLOB";
+    }
+
+    /**
+     * @param type - current type of the column, required by MySQL
+     */
+    public abstract String dropNotNull(String table, String column, String type);
+
+    public void setUuid(PreparedStatement statement, int index, UUID uuid) throws SQLException {
+        statement.setObject(index, uuid);
+    }
+
+    public UUID getUuid(ResultSet set, int index) throws SQLException {
+        return set.getObject(index, UUID.class);
+    }
+
+    /**
+     * @return fetch size which makes driver read rows in pages instead of loading the whole result
+     */
+    public int streamingFetchSize(int fetchSize) {
+        return fetchSize;
+    }
+
+    public String createIndex(String name, String table, String... columns) {
+        return "CREATE INDEX IF NOT EXISTS " + name + " ON " + quote(table) + " (" + join(columns) + ")";
+    }
+
+    String join(String[] columns) {
+        return Arrays.stream(columns).map(this::quote).collect(Collectors.joining(","));
+    }
+
+    static String placeholders(int count) {
+        return String.join(",", Collections.nCopies(count, "?"));
+    }
+
+    /**
+     * @param name - name from config or 'auto' to detect dialect by JDBC url
+     */
+    public static SqlDialect fromConfig(String name, String url) {
+        if (name != null && !name.equalsIgnoreCase("auto")) {
+            return valueOf(name.trim().toUpperCase());
+        }
+        String lower = url.toLowerCase();
+        if (lower.startsWith("jdbc:h2:")) {
+            return H2;
+        }
+        if (lower.startsWith("jdbc:postgresql:")) {
+            return POSTGRESQL;
+        }
+        if (lower.startsWith("jdbc:mysql:") || lower.startsWith("jdbc:mariadb:")) {
+            return MYSQL;
+        }
+        throw new IllegalArgumentException("Can not detect SQL dialect of " + url + ", set it in config");
+    }
+}
@@ -0,0 +1,34 @@
+package ru.leymooo.simpleskins.storage;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Database which stores skins of players. Backends are registered in {@link StorageBackends}
+ * and selected with 'database.type' in config.
+ */
+public interface StorageBackend {
+
+    /**
+     * @return short description for logs, must not contain credentials
+     */
+    String getDescription();
+
+    /**
+     * Opens new connection. Connections are pooled by the caller
+     */
+    Connection connect() throws SQLException;
+
+    SqlDialect getDialect();
+
+    /**
+     * @return true if database can be used by several proxies, so their changes must be tracked
+     */
+    boolean isShared();
+
+    /**
+     * Called after all connections are closed
+     */
+    default void close() {
+    }
+}
@@ -0,0 +1,45 @@
+package ru.leymooo.simpleskins.storage;
+
+import ninja.leaping.configurate.ConfigurationNode;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of storage backends by their type in config
+ */
+public final class StorageBackends {
+
+    private static final Map<String, Factory> FACTORIES = new ConcurrentHashMap<>();
+
+    static {
+        register("h2", (dataDirectory, config) -> new EmbeddedH2Backend(dataDirectory, config.getNode("h2")));
+        register("sql", (dataDirectory, config) -> new JdbcBackend(config.getNode("sql"), dataDirectory));
+    }
+
+    private StorageBackends() {
+    }
+
+    public static void register(String type, Factory factory) {
+        FACTORIES.put(type.toLowerCase(), factory);
+    }
+
+    /**
+     * @param config - 'database' section of config
+     */
+    public static StorageBackend create(Path dataDirectory, ConfigurationNode config) throws SQLException {
+        String type = config.getNode("type").getString("h2");
+        Factory factory = FACTORIES.get(type.toLowerCase());
+        if (factory == null) {
+            throw new SQLException("Unknown database type " + type + ", known types: " + FACTORIES.keySet());
+        }
+        return factory.create(dataDirectory, config);
+    }
+
+    public interface Factory {
+
+        StorageBackend create(Path dataDirectory, ConfigurationNode config) throws SQLException;
+    }
+}
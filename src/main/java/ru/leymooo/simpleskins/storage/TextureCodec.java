@@ -0,0 +1,98 @@
+package ru.leymooo.simpleskins.storage;
+
+import com.velocitypowered.api.util.GameProfile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compressed form of texture properties stored in the Textures table.
+ * Base64 value and signature are stored decoded, so JSON of the value is compressed well.
+ */
+public final class TextureCodec {
+
+    private static final byte RAW = 0;
+    private static final byte BASE64 = 1;
+
+    private TextureCodec() {
+    }
+
+    /**
+     * @return hex SHA-256 of skin uuid, value and signature
+     */
+    public static String hash(UUID skinUuid, GameProfile.Property property) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(String.valueOf(skinUuid).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(property.getValue().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(property.getSignature().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b : digest.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not supported", ex);
+        }
+    }
+
+    public static byte[] encode(GameProfile.Property property) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater))) {
+            writeString(out, property.getValue());
+            writeString(out, property.getSignature());
+        } catch (IOException ex) {
+            throw new IllegalStateException("Can not compress texture", ex);
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    public static GameProfile.Property decode(byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(payload)))) {
+            return new GameProfile.Property("textures", readString(in), readString(in));
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] decoded = decodeCanonical(value);
+        out.writeByte(decoded == null ? RAW : BASE64);
+        byte[] data = decoded == null ? value.getBytes(StandardCharsets.UTF_8) : decoded;
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        byte[] data = new byte[in.readInt()];
+        in.readFully(data);
+        return type == BASE64 ? Base64.getEncoder().encodeToString(data) : new String(data, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return decoded bytes or null if value can not be restored exactly from them
+     */
+    private static byte[] decodeCanonical(String value) {
+        try {
+            byte[] decoded = Base64.getDecoder().decode(value);
+            return Base64.getEncoder().encodeToString(decoded).equals(value) ? decoded : null;
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package ru.leymooo.simpleskins.utils;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import ninja.leaping.configurate.ConfigurationNode;
+import ru.leymooo.simpleskins.metrics.Counter;
+import ru.leymooo.simpleskins.metrics.Metrics;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Executor which accepts at most threads + queue-size tasks. When it is full, task is rejected
+ * or runs in the calling thread, depending on the rejection policy.
+ * With virtual threads every accepted task runs at once on its own virtual thread.
+ */
+public class BoundedExecutor implements Executor {
+
+    private final String name;
+    private final ExecutorService delegate;
+    private final int limit;
+    private final Semaphore permits;
+    private final boolean callerRuns;
+    private final AtomicInteger active = new AtomicInteger();
+    private final Counter rejected;
+
+    public BoundedExecutor(String name, ConfigurationNode config, int defaultThreads, int defaultQueueSize,
+                           String defaultRejection, boolean virtual, Metrics metrics) {
+        this.name = name;
+        int threads = Math.max(1, config.getNode("threads").getInt(defaultThreads));
+        this.limit = threads + Math.max(0, config.getNode("queue-size").getInt(defaultQueueSize));
+        this.permits = new Semaphore(limit);
+        this.callerRuns = "caller-runs".equalsIgnoreCase(config.getNode("rejection").getString(defaultRejection));
+        String threadName = "SimpleSkins " + name;
+        if (virtual) {
+            this.delegate = VirtualThreads.newExecutor(threadName);
+        } else {
+            //queue is bounded by permits
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    new ThreadFactoryBuilder().setNameFormat(threadName + " #%d").setDaemon(true).build());
+            executor.allowCoreThreadTimeOut(true);
+            this.delegate = executor;
+        }
+        String label = name.toLowerCase();
+        this.rejected = metrics.counter("simpleskins_executor_rejected_total", "executor", label);
+        metrics.gauge("simpleskins_executor_queue_size", this::getQueueSize, "executor", label);
+        metrics.gauge("simpleskins_executor_active_threads", this::getActiveCount, "executor", label);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (!permits.tryAcquire()) {
+            rejected.increment();
+            if (callerRuns && !delegate.isShutdown()) {
+                task.run();
+                return;
+            }
+            throw new RejectedExecutionException(name + " executor is full");
+        }
+        try {
+            delegate.execute(() -> {
+                active.incrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    active.decrementAndGet();
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Like {@link CompletableFuture#supplyAsync}, but rejection completes the future exceptionally
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> supplier) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            execute(() -> {
+                try {
+                    future.complete(supplier.get());
+                } catch (Throwable ex) {
+                    future.completeExceptionally(ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    public int getQueueSize() {
+        return Math.max(0, limit - permits.availablePermits() - active.get());
+    }
+
+    public void shutdown(long timeoutMillis) {
+        delegate.shutdownNow();
+        try {
+            delegate.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package ru.leymooo.simpleskins.utils;
+
+import ru.leymooo.simpleskins.storage.StorageBackend;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed size pool of JDBC connections. Every connection keeps its own prepared statements,
+ * so the same SQL is prepared only once per connection.
+ */
+public class ConnectionPool {
+
+    private final StorageBackend backend;
+    private final long timeout;
+    private final int permitCount;
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    private volatile boolean closed;
+
+    /**
+     * @param backend - database which opens new connections
+     * @param size    - maximum amount of open connections
+     * @param timeout - time in milliseconds to wait for a free connection
+     */
+    public ConnectionPool(StorageBackend backend, int size, long timeout) {
+        this.backend = backend;
+        this.timeout = timeout;
+        this.permitCount = Math.max(1, size);
+        this.permits = new Semaphore(permitCount, true);
+    }
+
+    public PooledConnection getConnection() throws SQLException {
+        try {
+            if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                throw new SQLTimeoutException("Timed out waiting for database connection");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for database connection", ex);
+        }
+        try {
+            if (closed) {
+                throw new SQLException("Connection pool is closed");
+            }
+            PooledConnection connection = idle.pollFirst();
+            if (connection == null || connection.connection.isClosed()) {
+                connection = new PooledConnection(backend.connect());
+            }
+            return connection;
+        } catch (SQLException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Waits until all connections are returned, closes them and runs action on a new connection
+     * which is not given to anyone else. Used for maintenance on shutdown which needs the whole database.
+     */
+    public void exclusive(ConnectionAction action) throws SQLException {
+        int size = permitCount;
+        try {
+            if (!permits.tryAcquire(size, timeout, TimeUnit.MILLISECONDS)) {
+                throw new SQLTimeoutException("Timed out waiting for all database connections");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for database connections", ex);
+        }
+        try {
+            PooledConnection idleConnection;
+            while ((idleConnection = idle.pollFirst()) != null) {
+                idleConnection.connection.close();
+            }
+            try (Connection connection = backend.connect()) {
+                action.run(connection);
+            }
+        } finally {
+            permits.release(size);
+        }
+    }
+
+    public void close() throws SQLException {
+        closed = true;
+        SQLException error = null;
+        PooledConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            try {
+                connection.connection.close();
+            } catch (SQLException ex) {
+                error = ex;
+            }
+        }
+        backend.close();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    public interface ConnectionAction {
+
+        void run(Connection connection) throws SQLException;
+    }
+
+    public class PooledConnection implements AutoCloseable {
+
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+        private PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * Returns cached prepared statement for this connection. Statement must not be closed by caller.
+         */
+        public PreparedStatement prepareStatement(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null || statement.isClosed()) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            } else {
+                statement.clearParameters();
+            }
+            return statement;
+        }
+
+        public Statement createStatement() throws SQLException {
+            return connection.createStatement();
+        }
+
+        public Connection getConnection() {
+            return connection;
+        }
+
+        /**
+         * Returns connection to the pool
+         */
+        @Override
+        public void close() throws SQLException {
+            try {
+                if (closed) {
+                    connection.close();
+                } else {
+                    idle.offerFirst(this);
+                }
+            } finally {
+                permits.release();
+            }
+        }
+    }
+}
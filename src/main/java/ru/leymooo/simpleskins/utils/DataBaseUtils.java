@@ -1,124 +1,619 @@
 package ru.leymooo.simpleskins.utils;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.velocitypowered.api.util.GameProfile;
+import ninja.leaping.configurate.ConfigurationNode;
 import ru.leymooo.simpleskins.SimpleSkins;
+import ru.leymooo.simpleskins.metrics.Metrics;
+import ru.leymooo.simpleskins.metrics.Timer;
+import ru.leymooo.simpleskins.storage.EmbeddedH2Backend;
+import ru.leymooo.simpleskins.storage.SchemaMigrations;
+import ru.leymooo.simpleskins.storage.SqlDialect;
+import ru.leymooo.simpleskins.storage.StorageBackend;
+import ru.leymooo.simpleskins.storage.StorageBackends;
+import ru.leymooo.simpleskins.storage.TextureCodec;
+import ru.leymooo.simpleskins.utils.ConnectionPool.PooledConnection;
 import ru.leymooo.simpleskins.utils.skinfetch.FetchResult;
 import ru.leymooo.simpleskins.utils.skinfetch.SkinFetchResult;
 
-import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 public class DataBaseUtils {
 
     private final SimpleSkins plugin;
-    private static final String INSERT_SQL = "INSERT INTO `Users` (`Name`,`SkinUUID`,`SkinValue`,`SkinSignature`,`Timestamp`) VALUES (?,?,?,?,?);";
-    private static final String UPDATE_SQL = "UPDATE `Users` SET `SkinUUID` = ?,`SkinValue` = ?,`SkinSignature` = ?,`Timestamp` = ? WHERE `Name` = " +
-            "?;";
-    private static final String SELECT_SKIN_SQL = "SELECT `SkinUUID`, `SkinValue`, `SkinSignature` FROM `Users` WHERE `Name` = ? LIMIT 1;";
-    private static final String SELECT_UUID_SQL = "SELECT `SkinUUID` FROM `Users` WHERE `Name` = ? LIMIT 1;";
-    private static final String SELECT_NAME_SQL = "SELECT `Name` FROM `Users` WHERE `Name` = ? LIMIT 1;";
-    private Connection connection;
+    private static final String[] USER_COLUMNS = {"Name", "SkinUUID", "TextureHash", "SkinValue", "SkinSignature", "Timestamp"};
+    private static final String[] TEXTURE_COLUMNS = {"Hash", "SkinUUID", "Payload", "UpdatedAt"};
+    //textures written recently are kept, the player row which uses them may be not committed yet
+    private static final long UNUSED_TEXTURE_AGE = TimeUnit.HOURS.toMillis(1);
+    private static final String[] NAME_UUID_COLUMNS = {"Name", "UUID", "Timestamp"};
+    private String mergeSql;
+    private String mergeTextureSql;
+    private String selectLegacySql;
+    private String selectAllSql;
+    private String updateLegacySql;
+    private String deleteUnusedTexturesSql;
+    private String selectSkinSql;
+    private String selectUuidSql;
+    private String selectNameUuidSql;
+    private String mergeNameUuidSql;
+    private String selectStaleSql;
+    private String selectChangedSql;
+    private final Timer selectSkinTimer;
+    private final Timer selectUuidTimer;
+    private final Timer selectNameUuidTimer;
+    private final Timer mergeNameUuidTimer;
+    private final Timer selectStaleTimer;
+    private final Timer mergeUsersTimer;
+    private final Timer selectChangedTimer;
+    //loaded textures by hash, so players with the same skin share one property instance
+    private final Cache<String, GameProfile.Property> textures = CacheBuilder.newBuilder().weakValues().build();
+    private StorageBackend backend;
+    private SqlDialect dialect;
+    private ConnectionPool pool;
+    private SaveQueue saveQueue;
+    private TextureMaintenance textureMaintenance;
+    private boolean compactOnShutdown;
+    private UserCache userCache;
 
     public DataBaseUtils(SimpleSkins plugin) {
         this.plugin = plugin;
+        Metrics metrics = plugin.getMetrics();
+        this.selectSkinTimer = metrics.timer("simpleskins_db_query_seconds", "query", "select_skin");
+        this.selectUuidTimer = metrics.timer("simpleskins_db_query_seconds", "query", "select_uuid");
+        this.selectNameUuidTimer = metrics.timer("simpleskins_db_query_seconds", "query", "select_name_uuid");
+        this.mergeNameUuidTimer = metrics.timer("simpleskins_db_query_seconds", "query", "merge_name_uuid");
+        this.selectStaleTimer = metrics.timer("simpleskins_db_query_seconds", "query", "select_stale");
+        this.mergeUsersTimer = metrics.timer("simpleskins_db_query_seconds", "query", "merge_users");
+        this.selectChangedTimer = metrics.timer("simpleskins_db_query_seconds", "query", "select_changed");
         connect();
+        metrics.cacheStats("user", userCache::getStats);
     }
 
     private void connect() {
+        this.userCache = new UserCache(plugin.getConfig().getNode("user-cache"));
         try {
-            Class.forName("org.h2.Driver");
-            String url = "jdbc:h2:." + File.separator + plugin.getDataDirectory().toString() + File.separator +
-                    "users;mode=MySQL";
-            plugin.getLogger().info(url);
-            this.connection = DriverManager.getConnection(url, null, null);
-            try (Statement st = this.connection.createStatement()) {
-                String sql = "CREATE TABLE IF NOT EXISTS `Users` ("
-                        + "`Name` VARCHAR(16) NOT NULL PRIMARY KEY,"
-                        + "`SkinUUID` UUID,"
-                        + "`SkinValue` TEXT NOT NULL,"
-                        + "`SkinSignature` TEXT NOT NULL,"
-                        + "`Timestamp` BIGINT NOT NULL);";
-                st.execute(sql);
+            ConfigurationNode node = plugin.getConfig().getNode("database");
+            this.backend = StorageBackends.create(plugin.getDataDirectory(), node);
+            this.dialect = backend.getDialect();
+            plugin.getLogger().info("Using {}", backend.getDescription());
+            prepareQueries();
+            this.pool = new ConnectionPool(backend, node.getNode("pool-size").getInt(4),
+                    node.getNode("connection-timeout").getLong(5000));
+            this.saveQueue = new SaveQueue(plugin, this, node.getNode("save-batch-size").getInt(100),
+                    node.getNode("save-flush-interval").getLong(1000));
+            try (PooledConnection connection = getPool().getConnection()) {
+                new SchemaMigrations(dialect).migrate(connection.getConnection(), plugin.getLogger());
             }
-        } catch (SQLException | ClassNotFoundException ex) {
-            plugin.getLogger().error("Can not init database", ex);
+            this.textureMaintenance = new TextureMaintenance(plugin, this);
+            this.compactOnShutdown = backend instanceof EmbeddedH2Backend && node.getNode("h2", "compact-on-shutdown").getBoolean(true);
+        } catch (SQLException | IllegalArgumentException ex) {
+            plugin.getLogger().error("Can not init database, skins will not be saved until the proxy is restarted", ex);
+            closeUnavailable();
         }
     }
 
-    public Optional<FetchResult> getProperty(String name) {
-        try (PreparedStatement ps = connection.prepareStatement(SELECT_SKIN_SQL)) {
+    /**
+     * Leaves the database unavailable after failed init, queries throw SQLException instead of using half created state
+     */
+    private void closeUnavailable() {
+        if (saveQueue != null) {
+            saveQueue.close();
+            this.saveQueue = null;
+        }
+        if (pool != null) {
+            try {
+                pool.close();
+            } catch (SQLException ex) {
+                plugin.getLogger().error("Can not close database connection", ex);
+            }
+            this.pool = null;
+        }
+    }
+
+    /**
+     * @return false if database could not be initialized
+     */
+    public boolean isAvailable() {
+        return pool != null;
+    }
+
+    private ConnectionPool getPool() throws SQLException {
+        ConnectionPool pool = this.pool;
+        if (pool == null) {
+            throw new SQLException("Database is not available");
+        }
+        return pool;
+    }
+
+    private Optional<FetchResult> getPending(String name) {
+        return saveQueue == null ? Optional.empty() : saveQueue.getPending(name);
+    }
+
+    private void prepareQueries() {
+        this.mergeSql = dialect.upsert("Users", USER_COLUMNS, "Name");
+        this.mergeTextureSql = dialect.upsert("Textures", TEXTURE_COLUMNS, "Hash");
+        this.selectSkinSql = "SELECT u." + q("SkinUUID") + ", u." + q("TextureHash") + ", t." + q("Payload") + ", u." + q("SkinValue")
+                + ", u." + q("SkinSignature") + " FROM " + q("Users") + " u LEFT JOIN " + q("Textures") + " t ON t." + q("Hash")
+                + " = u." + q("TextureHash") + " WHERE u." + q("Name") + " = ? LIMIT 1";
+        this.selectAllSql = "SELECT u." + q("Name") + ", u." + q("SkinUUID") + ", u." + q("TextureHash") + ", t." + q("Payload")
+                + ", u." + q("SkinValue") + ", u." + q("SkinSignature") + ", u." + q("Timestamp") + " FROM " + q("Users")
+                + " u LEFT JOIN " + q("Textures") + " t ON t." + q("Hash") + " = u." + q("TextureHash");
+        this.selectLegacySql = "SELECT " + q("Name") + ", " + q("SkinUUID") + ", " + q("SkinValue") + ", " + q("SkinSignature")
+                + " FROM " + q("Users") + " WHERE " + q("TextureHash") + " IS NULL LIMIT ?";
+        this.updateLegacySql = "UPDATE " + q("Users") + " SET " + q("TextureHash") + " = ?, " + q("SkinValue") + " = NULL, "
+                + q("SkinSignature") + " = NULL WHERE " + q("Name") + " = ? AND " + q("TextureHash") + " IS NULL";
+        this.deleteUnusedTexturesSql = "DELETE FROM " + q("Textures") + " WHERE " + q("UpdatedAt") + " < ? AND " + q("Hash") + " NOT IN (SELECT "
+                + q("TextureHash") + " FROM " + q("Users") + " WHERE " + q("TextureHash") + " IS NOT NULL)";
+        this.selectUuidSql = "SELECT " + q("SkinUUID") + " FROM " + q("Users") + " WHERE " + q("Name") + " = ? LIMIT 1";
+        this.selectNameUuidSql = "SELECT " + q("UUID") + ", " + q("Timestamp") + " FROM " + q("NameCache")
+                + " WHERE " + q("Name") + " = ? LIMIT 1";
+        this.mergeNameUuidSql = dialect.upsert("NameCache", NAME_UUID_COLUMNS, "Name");
+        this.selectStaleSql = "SELECT " + q("Name") + ", " + q("SkinUUID") + ", " + q("Timestamp") + " FROM " + q("Users")
+                + " WHERE " + q("Timestamp") + " < ? AND " + afterCursor() + " ORDER BY " + q("Timestamp") + ", " + q("Name") + " LIMIT ?";
+        this.selectChangedSql = "SELECT " + q("Name") + ", " + q("SkinUUID") + ", " + q("Timestamp") + " FROM " + q("Users")
+                + " WHERE " + afterCursor() + " ORDER BY " + q("Timestamp") + ", " + q("Name") + " LIMIT ?";
+    }
+
+    private String afterCursor() {
+        return "(" + q("Timestamp") + " > ? OR (" + q("Timestamp") + " = ? AND " + q("Name") + " > ?))";
+    }
+
+    private String q(String identifier) {
+        return dialect.quote(identifier);
+    }
+
+    /**
+     * @return skin of the player or empty if the player is not stored
+     * @throws SQLException if database is not available, so caller does not treat the player as a new one
+     */
+    public Optional<FetchResult> getProperty(String name) throws SQLException {
+        Optional<FetchResult> pending = getPending(name);
+        if (pending.isPresent()) {
+            return pending;
+        }
+        Optional<FetchResult> cached = userCache.getIfCached(name);
+        if (cached.isPresent()) {
+            return cached;
+        }
+        long start = System.nanoTime();
+        try (PooledConnection connection = getPool().getConnection()) {
+            PreparedStatement ps = connection.prepareStatement(selectSkinSql);
             ps.setString(1, name.toLowerCase());
-            ResultSet set = ps.executeQuery();
-            if (set.next()) {
-                return Optional.of(new SkinFetchResult(set.getObject(1, UUID.class),
-                        new GameProfile.Property("textures", set.getString(2), set.getString(3))));
+            try (ResultSet set = ps.executeQuery()) {
+                if (set.next()) {
+                    UUID skinUuid = dialect.getUuid(set, 1);
+                    GameProfile.Property texture = readTexture(set, 2, skinUuid);
+                    if (texture == null) {
+                        //skin is lost, so the player is treated as a new one and the skin is fetched again
+                        return Optional.empty();
+                    }
+                    FetchResult result = new SkinFetchResult(skinUuid, texture);
+                    userCache.cache(name, result);
+                    return Optional.of(result);
+                }
             }
-        } catch (SQLException ex) {
-            plugin.getLogger().error("Can not execute SQL", ex);
+        } finally {
+            selectSkinTimer.recordSince(start);
         }
         return Optional.empty();
     }
 
     public Optional<UUID> getUuid(String name) {
-        try (PreparedStatement ps = connection.prepareStatement(SELECT_UUID_SQL)) {
+        Optional<FetchResult> pending = getPending(name);
+        if (!pending.isPresent()) {
+            pending = userCache.getIfCached(name);
+        }
+        if (pending.isPresent()) {
+            return Optional.ofNullable(pending.get().getId());
+        }
+        if (!isAvailable()) {
+            return Optional.empty();
+        }
+        long start = System.nanoTime();
+        try (PooledConnection connection = getPool().getConnection()) {
+            PreparedStatement ps = connection.prepareStatement(selectUuidSql);
             ps.setString(1, name.toLowerCase());
-            ResultSet set = ps.executeQuery();
-            if (set.next()) {
-                return Optional.ofNullable(set.getObject(1, UUID.class));
+            try (ResultSet set = ps.executeQuery()) {
+                if (set.next()) {
+                    return Optional.ofNullable(dialect.getUuid(set, 1));
+                }
             }
         } catch (SQLException ex) {
             plugin.getLogger().error("Can not execute SQL", ex);
+        } finally {
+            selectUuidTimer.recordSince(start);
         }
         return Optional.empty();
     }
 
-    public void saveUser(String name, FetchResult result) {
-        try (PreparedStatement ps = connection.prepareStatement(SELECT_NAME_SQL)) {
+    public Optional<NameUuidCache.CachedUuid> getNameUuid(String name) {
+        if (!isAvailable()) {
+            return Optional.empty();
+        }
+        long start = System.nanoTime();
+        try (PooledConnection connection = getPool().getConnection()) {
+            PreparedStatement ps = connection.prepareStatement(selectNameUuidSql);
             ps.setString(1, name.toLowerCase());
-            ResultSet set = ps.executeQuery();
-            if (set.next()) {
-                updateUser(name, result.getId(), result.getProperty());
-            } else {
-                addUser(name, result.getId(), result.getProperty());
+            try (ResultSet set = ps.executeQuery()) {
+                if (set.next()) {
+                    return Optional.of(new NameUuidCache.CachedUuid(dialect.getUuid(set, 1), set.getLong(2)));
+                }
             }
         } catch (SQLException ex) {
             plugin.getLogger().error("Can not execute SQL", ex);
+        } finally {
+            selectNameUuidTimer.recordSince(start);
         }
+        return Optional.empty();
     }
 
-    private void addUser(String name, UUID uuid, GameProfile.Property property) {
-        try (PreparedStatement ps = connection.prepareStatement(INSERT_SQL)) {
+    public void saveNameUuid(String name, UUID uuid) {
+        if (!isAvailable()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try (PooledConnection connection = getPool().getConnection()) {
+            PreparedStatement ps = connection.prepareStatement(mergeNameUuidSql);
             ps.setString(1, name.toLowerCase());
-            ps.setObject(2, uuid);
-            ps.setString(3, property.getValue());
-            ps.setString(4, property.getSignature());
-            ps.setLong(5, System.currentTimeMillis());
+            dialect.setUuid(ps, 2, uuid);
+            ps.setLong(3, System.currentTimeMillis());
             ps.executeUpdate();
         } catch (SQLException ex) {
             plugin.getLogger().error("Can not execute SQL", ex);
+        } finally {
+            mergeNameUuidTimer.recordSince(start);
         }
     }
 
-    private void updateUser(String name, UUID uuid, GameProfile.Property property) {
-        try (PreparedStatement ps = connection.prepareStatement(UPDATE_SQL)) {
-            ps.setObject(1, uuid);
-            ps.setString(2, property.getValue());
-            ps.setString(3, property.getSignature());
-            ps.setLong(4, System.currentTimeMillis());
-            ps.setString(5, name.toLowerCase());
-            ps.executeUpdate();
+    /**
+     * Returns users updated before olderThan which come after provided timestamp and name
+     * in order of timestamp and name.
+     */
+    public List<UserRow> getStaleUsers(long olderThan, long afterTimestamp, String afterName, int limit) {
+        List<UserRow> users = new ArrayList<>();
+        if (!isAvailable()) {
+            return users;
+        }
+        long start = System.nanoTime();
+        try (PooledConnection connection = getPool().getConnection()) {
+            PreparedStatement ps = connection.prepareStatement(selectStaleSql);
+            ps.setLong(1, olderThan);
+            ps.setLong(2, afterTimestamp);
+            ps.setLong(3, afterTimestamp);
+            ps.setString(4, afterName);
+            ps.setInt(5, limit);
+            try (ResultSet set = ps.executeQuery()) {
+                while (set.next()) {
+                    users.add(new UserRow(set.getString(1), dialect.getUuid(set, 2), set.getLong(3)));
+                }
+            }
         } catch (SQLException ex) {
             plugin.getLogger().error("Can not execute SQL", ex);
+        } finally {
+            selectStaleTimer.recordSince(start);
         }
+        return users;
     }
 
-    public void closeConnection() {
+    /**
+     * Returns users updated after provided timestamp and name in order of timestamp and name.
+     * Used to find changes which were made by other proxies.
+     */
+    public List<UserRow> getChangedUsers(long afterTimestamp, String afterName, int limit) throws SQLException {
+        List<UserRow> users = new ArrayList<>();
+        long start = System.nanoTime();
+        try (PooledConnection connection = getPool().getConnection()) {
+            PreparedStatement ps = connection.prepareStatement(selectChangedSql);
+            ps.setLong(1, afterTimestamp);
+            ps.setLong(2, afterTimestamp);
+            ps.setString(3, afterName);
+            ps.setInt(4, limit);
+            try (ResultSet set = ps.executeQuery()) {
+                while (set.next()) {
+                    users.add(new UserRow(set.getString(1), dialect.getUuid(set, 2), set.getLong(3)));
+                }
+            }
+        } finally {
+            selectChangedTimer.recordSince(start);
+        }
+        return users;
+    }
+
+    /**
+     * Reads texture from hash, payload, value and signature columns starting from provided index
+     *
+     * @return texture or null if the row references a texture which does not exist
+     */
+    private GameProfile.Property readTexture(ResultSet set, int index, UUID skinUuid) throws SQLException {
+        String hash = set.getString(index);
+        byte[] payload = set.getBytes(index + 1);
+        if (hash != null) {
+            return payload == null ? null : loadTexture(hash, payload);
+        }
+        String value = set.getString(index + 2);
+        String signature = set.getString(index + 3);
+        if (value == null || signature == null) {
+            return null;
+        }
+        return intern(skinUuid, new GameProfile.Property("textures", value, signature));
+    }
+
+    private GameProfile.Property loadTexture(String hash, byte[] payload) throws SQLException {
         try {
-            this.connection.close();
-        } catch (SQLException ex) {
-            plugin.getLogger().error("Can not close database connection", ex);
+            return textures.get(hash, () -> TextureCodec.decode(payload));
+        } catch (ExecutionException ex) {
+            throw new SQLException("Can not decode texture " + hash, ex.getCause());
+        }
+    }
+
+    private GameProfile.Property intern(UUID skinUuid, GameProfile.Property property) {
+        GameProfile.Property interned = textures.asMap().putIfAbsent(TextureCodec.hash(skinUuid, property), property);
+        return interned == null ? property : interned;
+    }
+
+    /**
+     * Queues user save. Saves are written in batches by {@link SaveQueue}
+     */
+    public void saveUser(String name, FetchResult result) {
+        GameProfile.Property property = intern(result.getId(), result.getProperty());
+        if (property != result.getProperty()) {
+            result = new SkinFetchResult(result.getId(), property);
+        }
+        userCache.cache(name, result);
+        //without database the skin is kept only in the user cache
+        if (saveQueue != null) {
+            saveQueue.add(name, result);
+        }
+    }
+
+    void saveUsers(Map<String, FetchResult> users) throws SQLException {
+        writeUsers(users, System.currentTimeMillis());
+    }
+
+    /**
+     * Writes users imported from another database. Rows get the import time, so other proxies which share
+     * the database see them as changed and skin refresh starts for them from now
+     */
+    public void importUsers(Map<String, FetchResult> users) throws SQLException {
+        writeUsers(users, System.currentTimeMillis());
+        users.keySet().forEach(userCache::invalidate);
+    }
+
+    private void writeUsers(Map<String, FetchResult> users, long timestamp) throws SQLException {
+        long start = System.nanoTime();
+        try (PooledConnection connection = getPool().getConnection()) {
+            Connection raw = connection.getConnection();
+            PreparedStatement textureStatement = connection.prepareStatement(mergeTextureSql);
+            PreparedStatement ps = connection.prepareStatement(mergeSql);
+            Set<String> batchTextures = new HashSet<>();
+            raw.setAutoCommit(false);
+            try {
+                for (Map.Entry<String, FetchResult> user : users.entrySet()) {
+                    UUID skinUuid = user.getValue().getId();
+                    GameProfile.Property property = user.getValue().getProperty();
+                    String hash = TextureCodec.hash(skinUuid, property);
+                    if (batchTextures.add(hash)) {
+                        addTexture(textureStatement, hash, skinUuid, property);
+                    }
+                    ps.setString(1, user.getKey());
+                    dialect.setUuid(ps, 2, skinUuid);
+                    ps.setString(3, hash);
+                    ps.setNull(4, Types.VARCHAR);
+                    ps.setNull(5, Types.VARCHAR);
+                    ps.setLong(6, timestamp);
+                    ps.addBatch();
+                }
+                textureStatement.executeBatch();
+                ps.executeBatch();
+                raw.commit();
+            } catch (SQLException ex) {
+                textureStatement.clearBatch();
+                ps.clearBatch();
+                raw.rollback();
+                throw ex;
+            } finally {
+                raw.setAutoCommit(true);
+            }
+        } finally {
+            mergeUsersTimer.recordSince(start);
+        }
+    }
+
+    /**
+     * Reads all users with a forward-only cursor, so only one page of rows is kept in memory.
+     * One connection of the pool is used until all users are visited.
+     */
+    public void forEachUser(int fetchSize, UserVisitor visitor) throws SQLException, IOException {
+        try (PooledConnection connection = getPool().getConnection()) {
+            Connection raw = connection.getConnection();
+            //PostgreSQL uses cursor only inside of a transaction
+            raw.setAutoCommit(false);
+            try (PreparedStatement ps = raw.prepareStatement(selectAllSql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                ps.setFetchSize(dialect.streamingFetchSize(fetchSize));
+                try (ResultSet set = ps.executeQuery()) {
+                    while (set.next()) {
+                        UUID skinUuid = dialect.getUuid(set, 2);
+                        GameProfile.Property texture = readTexture(set, 3, skinUuid);
+                        if (texture != null) {
+                            visitor.accept(set.getString(1), new SkinFetchResult(skinUuid, texture), set.getLong(7));
+                        }
+                    }
+                }
+            } finally {
+                raw.rollback();
+                raw.setAutoCommit(true);
+            }
+        }
+    }
+
+    private void addTexture(PreparedStatement ps, String hash, UUID skinUuid, GameProfile.Property property) throws SQLException {
+        ps.setString(1, hash);
+        dialect.setUuid(ps, 2, skinUuid);
+        ps.setBytes(3, TextureCodec.encode(property));
+        ps.setLong(4, System.currentTimeMillis());
+        ps.addBatch();
+    }
+
+    /**
+     * Moves textures of rows written by older versions from Users to Textures table
+     *
+     * @return amount of moved rows, 0 when nothing is left
+     */
+    int migrateTextures(int limit) throws SQLException {
+        try (PooledConnection connection = getPool().getConnection()) {
+            Map<String, FetchResult> legacy = new HashMap<>();
+            PreparedStatement select = connection.prepareStatement(selectLegacySql);
+            select.setInt(1, limit);
+            try (ResultSet set = select.executeQuery()) {
+                while (set.next()) {
+                    legacy.put(set.getString(1), new SkinFetchResult(dialect.getUuid(set, 2),
+                            new GameProfile.Property("textures", set.getString(3), set.getString(4))));
+                }
+            }
+            if (legacy.isEmpty()) {
+                return 0;
+            }
+            Connection raw = connection.getConnection();
+            PreparedStatement textureStatement = connection.prepareStatement(mergeTextureSql);
+            PreparedStatement update = connection.prepareStatement(updateLegacySql);
+            Set<String> batchTextures = new HashSet<>();
+            raw.setAutoCommit(false);
+            try {
+                for (Map.Entry<String, FetchResult> user : legacy.entrySet()) {
+                    UUID skinUuid = user.getValue().getId();
+                    String hash = TextureCodec.hash(skinUuid, user.getValue().getProperty());
+                    if (batchTextures.add(hash)) {
+                        addTexture(textureStatement, hash, skinUuid, user.getValue().getProperty());
+                    }
+                    //row is skipped if it was saved with a new texture in the meantime
+                    update.setString(1, hash);
+                    update.setString(2, user.getKey());
+                    update.addBatch();
+                }
+                textureStatement.executeBatch();
+                update.executeBatch();
+                raw.commit();
+            } catch (SQLException ex) {
+                textureStatement.clearBatch();
+                update.clearBatch();
+                raw.rollback();
+                throw ex;
+            } finally {
+                raw.setAutoCommit(true);
+            }
+            return legacy.size();
+        }
+    }
+
+    /**
+     * Removes textures which are not used by any player anymore. Every save updates the time of its texture,
+     * so a texture which is being saved by a concurrent transaction is not removed
+     */
+    int deleteUnusedTextures() throws SQLException {
+        try (PooledConnection connection = getPool().getConnection()) {
+            PreparedStatement ps = connection.prepareStatement(deleteUnusedTexturesSql);
+            ps.setLong(1, System.currentTimeMillis() - UNUSED_TEXTURE_AGE);
+            return ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Rewrites embedded H2 file without free space and closes the database. Used only on shutdown,
+     * because the database is not available while it runs
+     */
+    private void compact() throws SQLException {
+        Path file = ((EmbeddedH2Backend) backend).getFile();
+        long sizeBefore = file.toFile().length();
+        long start = System.nanoTime();
+        pool.exclusive(connection -> connection.createStatement().execute("SHUTDOWN COMPACT"));
+        long sizeAfter = file.toFile().length();
+        plugin.getLogger().info("Database compacted from {} KB to {} KB in {} ms", sizeBefore / 1024, sizeAfter / 1024,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Writes all queued saves to the database. Scheduled flushes keep running
+     */
+    public void flushSaves() {
+        if (saveQueue != null) {
+            saveQueue.flush();
+        }
+    }
+
+    public StorageBackend getBackend() {
+        return backend;
+    }
+
+    public UserCache getUserCache() {
+        return userCache;
+    }
+
+    /**
+     * Writes queued saves and closes the database
+     */
+    public void closeConnection() {
+        if (saveQueue != null) {
+            saveQueue.close();
+        }
+        if (textureMaintenance != null) {
+            textureMaintenance.close();
+        }
+        if (compactOnShutdown) {
+            try {
+                compact();
+            } catch (SQLException ex) {
+                plugin.getLogger().error("Can not compact database", ex);
+            }
+        }
+        if (pool != null) {
+            try {
+                pool.close();
+            } catch (SQLException ex) {
+                plugin.getLogger().error("Can not close database connection", ex);
+            }
+        }
+    }
+
+    public interface UserVisitor {
+
+        void accept(String name, FetchResult skin, long timestamp) throws IOException;
+    }
+
+    public static class UserRow {
+
+        private final String name;
+        private final UUID skinUuid;
+        private final long timestamp;
+
+        public UserRow(String name, UUID skinUuid, long timestamp) {
+            this.name = name;
+            this.skinUuid = skinUuid;
+            this.timestamp = timestamp;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public UUID getSkinUuid() {
+            return skinUuid;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
         }
     }
 }
@@ -0,0 +1,213 @@
+package ru.leymooo.simpleskins.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.velocitypowered.api.scheduler.ScheduledTask;
+import com.velocitypowered.api.util.GameProfile;
+import ru.leymooo.simpleskins.SimpleSkins;
+import ru.leymooo.simpleskins.utils.FetchScheduler.Priority;
+import ru.leymooo.simpleskins.utils.skinfetch.FetchResult;
+import ru.leymooo.simpleskins.utils.skinfetch.SkinFetchResult;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Default skins resolved from 'default-skins' entries. Resolved skins are stored in default-skins.json,
+ * so they are available right after start. Entries older than max age are fetched again in background
+ * and the selector receives the new pool at once.
+ */
+public class DefaultSkinPool {
+
+    private static final Gson GSON = new Gson();
+    private final SimpleSkins plugin;
+    private final DefaultSkinSelector<FetchResult> selector;
+    private final List<Entry> entries = new ArrayList<>();
+    private final Path file;
+    private final long maxAge;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private final ScheduledTask task;
+    private volatile Map<String, StoredSkin> stored = Collections.emptyMap();
+
+    /**
+     * @param configEntries - 'name' or 'name:weight' entries
+     * @param maxAge        - time in milliseconds after which resolved skin is fetched again
+     */
+    public DefaultSkinPool(SimpleSkins plugin, DefaultSkinSelector<FetchResult> selector, List<String> configEntries, long maxAge) {
+        this.plugin = plugin;
+        this.selector = selector;
+        this.file = plugin.getDataDirectory().resolve("default-skins.json");
+        this.maxAge = maxAge;
+        for (String entry : configEntries) {
+            entries.add(parseEntry(entry));
+        }
+        load();
+        apply();
+        this.task = plugin.getProxyServer().getScheduler().buildTask(plugin, this::refresh)
+                .repeat(1, TimeUnit.HOURS).schedule();
+    }
+
+    private Entry parseEntry(String entry) {
+        int separator = entry.lastIndexOf(':');
+        if (separator > 0) {
+            try {
+                return new Entry(entry.substring(0, separator).trim(), Integer.parseInt(entry.substring(separator + 1).trim()));
+            } catch (NumberFormatException ex) {
+                plugin.getLogger().warn("Invalid weight of default skin {}", entry);
+            }
+        }
+        return new Entry(entry.trim(), 1);
+    }
+
+    /**
+     * Fetches entries which are not resolved or older than max age
+     */
+    private void refresh() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Map<String, StoredSkin> updated = new ConcurrentHashMap<>(stored);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (Entry entry : entries) {
+            StoredSkin skin = updated.get(entry.name);
+            if (skin != null && now - skin.timestamp < maxAge) {
+                continue;
+            }
+            futures.add(plugin.getSkinFetcher().fetchSkin(entry.name, false, Priority.BACKGROUND).thenAccept(result ->
+                    result.ifPresent(fetched -> updated.put(entry.name, new StoredSkin(entry.name, fetched, now)))));
+        }
+        if (futures.isEmpty()) {
+            refreshing.set(false);
+            return;
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).whenComplete((ignored, ex) -> {
+            try {
+                //skins which could not be fetched stay in the pool until next refresh
+                stored = updated;
+                apply();
+                save();
+                plugin.getLogger().info("Default skins refreshed, {} of {} are available", selector.getSkins().size(), entries.size());
+            } finally {
+                refreshing.set(false);
+            }
+        });
+    }
+
+    private void apply() {
+        Map<String, StoredSkin> current = stored;
+        List<FetchResult> skins = new ArrayList<>();
+        List<Integer> weights = new ArrayList<>();
+        for (Entry entry : entries) {
+            StoredSkin skin = current.get(entry.name);
+            if (skin != null) {
+                skins.add(skin.toFetchResult());
+                weights.add(entry.weight);
+            }
+        }
+        selector.setSkins(skins, weights.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            List<StoredSkin> skins = GSON.fromJson(reader, new TypeToken<List<StoredSkin>>() {
+            }.getType());
+            Map<String, StoredSkin> loaded = new HashMap<>();
+            if (skins != null) {
+                for (StoredSkin skin : skins) {
+                    if (skin.entry != null && skin.value != null && skin.signature != null) {
+                        loaded.put(skin.entry, skin);
+                    }
+                }
+            }
+            stored = loaded;
+            plugin.getLogger().info("Loaded {} default skins from {}", loaded.size(), file.getFileName());
+        } catch (IOException | JsonParseException ex) {
+            plugin.getLogger().warn("Can not load default skins from {}", file, ex);
+        }
+    }
+
+    private void save() {
+        List<StoredSkin> skins = new ArrayList<>();
+        for (Entry entry : entries) {
+            StoredSkin skin = stored.get(entry.name);
+            if (skin != null) {
+                skins.add(skin);
+            }
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                GSON.toJson(skins, writer);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException ex) {
+            plugin.getLogger().warn("Can not save default skins to {}", file, ex);
+        }
+    }
+
+    public void close() {
+        task.cancel();
+    }
+
+    private static class Entry {
+
+        private final String name;
+        private final int weight;
+
+        private Entry(String name, int weight) {
+            this.name = name;
+            this.weight = weight;
+        }
+    }
+
+    private static class StoredSkin {
+
+        private String entry;
+        private String id;
+        private String value;
+        private String signature;
+        private long timestamp;
+
+        //used by gson
+        private StoredSkin() {
+        }
+
+        private StoredSkin(String entry, FetchResult result, long timestamp) {
+            this.entry = entry;
+            this.id = result.getId() == null ? null : result.getId().toString();
+            this.value = result.getProperty().getValue();
+            this.signature = result.getProperty().getSignature();
+            this.timestamp = timestamp;
+        }
+
+        private FetchResult toFetchResult() {
+            return new SkinFetchResult(id == null ? null : UUID.fromString(id),
+                    new GameProfile.Property("textures", value, signature));
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package ru.leymooo.simpleskins.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Thread safe selection of default skins. Skins are kept in an immutable snapshot which can be replaced at any time,
+ * selection only reads the current snapshot and increments an atomic counter.
+ */
+public class DefaultSkinSelector<T> {
+
+    private final Mode mode;
+    private final AtomicInteger counter = new AtomicInteger();
+    private final AtomicReference<Pool<T>> pool = new AtomicReference<>(new Pool<>(Collections.emptyList(), new int[0]));
+
+    public DefaultSkinSelector(Mode mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * Replaces skins. Selections which are in progress finish with the previous skins
+     *
+     * @param weights - weight of every skin, used by weighted and hash modes
+     */
+    public void setSkins(List<T> skins, int[] weights) {
+        if (skins.size() != weights.length) {
+            throw new IllegalArgumentException("Every skin must have a weight");
+        }
+        pool.set(new Pool<>(skins, weights));
+    }
+
+    public void setSkins(List<T> skins) {
+        int[] weights = new int[skins.size()];
+        Arrays.fill(weights, 1);
+        setSkins(skins, weights);
+    }
+
+    /**
+     * @param playerName - name of player who receives the skin, used by hash mode
+     * @return default skin or null if there are no default skins
+     */
+    public T select(String playerName) {
+        Pool<T> current = pool.get();
+        if (current.skins.length == 0) {
+            return null;
+        }
+        switch (mode) {
+            case WEIGHTED:
+                return current.byWeight(Math.floorMod((long) counter.getAndIncrement() * current.stride, current.totalWeight));
+            case HASH:
+                return current.byWeight(Math.floorMod(hash(playerName.toLowerCase()), current.totalWeight));
+            default:
+                return current.get(Math.floorMod(counter.getAndIncrement(), current.skins.length));
+        }
+    }
+
+    /**
+     * @return true if a player gets the same skin on every selection while skins are not changed
+     */
+    public boolean isStable() {
+        return mode == Mode.HASH;
+    }
+
+    public List<T> getSkins() {
+        return pool.get().asList();
+    }
+
+    public boolean isEmpty() {
+        return pool.get().skins.length == 0;
+    }
+
+    /**
+     * String hash is specified by the language, so the same name gets the same skin on every proxy.
+     * Hash is mixed, so similar names do not get neighbour skins.
+     */
+    private static long hash(String name) {
+        long hash = name.hashCode();
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    public enum Mode {
+        ROUND_ROBIN, WEIGHTED, HASH;
+
+        public static Mode fromConfig(String value) {
+            return value == null ? ROUND_ROBIN : valueOf(value.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    private static class Pool<T> {
+
+        private final Object[] skins;
+        //cumulative weights, skin i takes positions from bounds[i - 1] to bounds[i] - 1
+        private final long[] bounds;
+        private final long totalWeight;
+        //step over positions which is coprime with total weight, so one cycle visits every position once
+        //and skins with big weight are spread over the cycle
+        private final long stride;
+
+        private Pool(List<T> skins, int[] weights) {
+            this.skins = skins.toArray();
+            this.bounds = new long[weights.length];
+            long total = 0;
+            for (int i = 0; i < weights.length; i++) {
+                total += Math.max(1, weights[i]);
+                bounds[i] = total;
+            }
+            this.totalWeight = total;
+            this.stride = findStride(total);
+        }
+
+        private static long findStride(long total) {
+            long stride = Math.max(1, (long) (total * 0.618));
+            while (gcd(stride, total) != 1) {
+                stride++;
+            }
+            return stride;
+        }
+
+        private static long gcd(long a, long b) {
+            return b == 0 ? a : gcd(b, a % b);
+        }
+
+        private T byWeight(long position) {
+            int index = Arrays.binarySearch(bounds, position + 1);
+            return get(index >= 0 ? index : -index - 1);
+        }
+
+        @SuppressWarnings("unchecked")
+        private T get(int index) {
+            return (T) skins[index];
+        }
+
+        private List<T> asList() {
+            List<T> list = new ArrayList<>(skins.length);
+            for (int i = 0; i < skins.length; i++) {
+                list.add(get(i));
+            }
+            return list;
+        }
+    }
+}
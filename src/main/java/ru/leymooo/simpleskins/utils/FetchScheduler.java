@@ -0,0 +1,151 @@
+package ru.leymooo.simpleskins.utils;
+
+import ninja.leaping.configurate.ConfigurationNode;
+import ru.leymooo.simpleskins.metrics.Metrics;
+import ru.leymooo.simpleskins.metrics.Timer;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Limits the amount of skin fetches which run at the same time. Waiting fetches are started
+ * by priority: joining players first, then commands, then background work.
+ */
+public class FetchScheduler {
+
+    private final int maxConcurrent;
+    private final int maxQueue;
+    private final long overloadThreshold;
+    private final Timer[] waitTimers = new Timer[Priority.values().length];
+    private final AtomicInteger drainRequests = new AtomicInteger();
+    //guarded by this
+    @SuppressWarnings("unchecked")
+    private final Deque<Task<?>>[] queues = new Deque[Priority.values().length];
+    private int running;
+
+    /**
+     * @param config - 'scheduler' section of config
+     */
+    public FetchScheduler(ConfigurationNode config, Metrics metrics) {
+        this.maxConcurrent = Math.max(1, config.getNode("max-concurrent-fetches").getInt(8));
+        this.maxQueue = Math.max(1, config.getNode("max-queue").getInt(1000));
+        this.overloadThreshold = TimeUnit.MILLISECONDS.toNanos(config.getNode("overload-threshold").getLong(1000));
+        for (Priority priority : Priority.values()) {
+            String label = priority.name().toLowerCase();
+            queues[priority.ordinal()] = new ArrayDeque<>();
+            waitTimers[priority.ordinal()] = metrics.timer("simpleskins_fetch_queue_seconds", "priority", label);
+            metrics.gauge("simpleskins_fetch_queue_size", () -> getQueueSize(priority), "priority", label);
+        }
+    }
+
+    /**
+     * @param fetch - starts the fetch, it is called when one of running fetches is completed
+     * @return result of the fetch, fails with {@link RejectedExecutionException} if queue of the priority is full
+     */
+    public <T> CompletableFuture<T> submit(Priority priority, Supplier<CompletableFuture<T>> fetch) {
+        Task<T> task = new Task<>(priority, fetch);
+        synchronized (this) {
+            Deque<Task<?>> queue = queues[priority.ordinal()];
+            if (queue.size() >= maxQueue) {
+                task.result.completeExceptionally(new RejectedExecutionException(priority + " fetch queue is full"));
+                return task.result;
+            }
+            queue.addLast(task);
+        }
+        drain();
+        return task.result;
+    }
+
+    /**
+     * @return true if joining players wait for a fetch longer than the overload threshold
+     */
+    public synchronized boolean isOverloaded() {
+        Task<?> oldest = queues[Priority.LOGIN.ordinal()].peekFirst();
+        return oldest != null && System.nanoTime() - oldest.created > overloadThreshold;
+    }
+
+    public synchronized int getQueueSize(Priority priority) {
+        return queues[priority.ordinal()].size();
+    }
+
+    /**
+     * Starts waiting fetches while there are free slots. Fetches completed during the drain
+     * request one more pass instead of draining recursively.
+     */
+    private void drain() {
+        if (drainRequests.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            startWaiting();
+            missed = drainRequests.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void startWaiting() {
+        while (true) {
+            Task<?> task = null;
+            synchronized (this) {
+                if (running >= maxConcurrent) {
+                    return;
+                }
+                for (Deque<Task<?>> queue : queues) {
+                    task = queue.pollFirst();
+                    if (task != null) {
+                        break;
+                    }
+                }
+                if (task == null) {
+                    return;
+                }
+                running++;
+            }
+            start(task);
+        }
+    }
+
+    private <T> void start(Task<T> task) {
+        waitTimers[task.priority.ordinal()].recordSince(task.created);
+        CompletableFuture<T> future;
+        try {
+            future = task.fetch.get();
+        } catch (Throwable ex) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(ex);
+        }
+        future.whenComplete((value, ex) -> {
+            synchronized (this) {
+                running--;
+            }
+            if (ex == null) {
+                task.result.complete(value);
+            } else {
+                task.result.completeExceptionally(ex);
+            }
+            drain();
+        });
+    }
+
+    public enum Priority {
+        LOGIN, COMMAND, BACKGROUND
+    }
+
+    private static class Task<T> {
+
+        private final Priority priority;
+        private final Supplier<CompletableFuture<T>> fetch;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final long created = System.nanoTime();
+
+        private Task(Priority priority, Supplier<CompletableFuture<T>> fetch) {
+            this.priority = priority;
+            this.fetch = fetch;
+        }
+    }
+}
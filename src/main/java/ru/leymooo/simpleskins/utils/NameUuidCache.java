@@ -0,0 +1,88 @@
+package ru.leymooo.simpleskins.utils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import ninja.leaping.configurate.ConfigurationNode;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Name to UUID resolution cache. Entries are kept in memory and in the NameCache table,
+ * so resolutions survive restarts. Table is read and written on the database executor,
+ * because resolutions happen on fetch threads which must not wait for JDBC.
+ */
+public class NameUuidCache {
+
+    private final DataBaseUtils dataBaseUtils;
+    private final BoundedExecutor executor;
+    private final long ttl;
+    private final Cache<String, CachedUuid> cache;
+
+    public NameUuidCache(DataBaseUtils dataBaseUtils, BoundedExecutor executor, ConfigurationNode config) {
+        this.dataBaseUtils = dataBaseUtils;
+        this.executor = executor;
+        this.ttl = TimeUnit.HOURS.toMillis(config.getNode("ttl").getLong(24));
+        this.cache = CacheBuilder.newBuilder()
+                .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+                .maximumSize(config.getNode("max-entries").getLong(5000))
+                .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * @return UUID of the name or empty if it is not known or too old. Database errors are treated as unknown name
+     */
+    public CompletableFuture<Optional<UUID>> get(String name) {
+        String key = name.toLowerCase();
+        CachedUuid cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(getIfFresh(cached));
+        }
+        return executor.supply(() -> dataBaseUtils.getNameUuid(key)).handle((stored, ex) -> {
+            if (ex != null || !stored.isPresent()) {
+                return Optional.empty();
+            }
+            cache.put(key, stored.get());
+            return getIfFresh(stored.get());
+        });
+    }
+
+    /**
+     * Caches resolution and writes it to the database in background. Write is skipped if the database executor is full
+     */
+    public void put(String name, UUID uuid) {
+        String key = name.toLowerCase();
+        cache.put(key, new CachedUuid(uuid, System.currentTimeMillis()));
+        try {
+            executor.execute(() -> dataBaseUtils.saveNameUuid(key, uuid));
+        } catch (RejectedExecutionException ignored) {
+        }
+    }
+
+    private Optional<UUID> getIfFresh(CachedUuid cached) {
+        return cached.timestamp >= System.currentTimeMillis() - ttl ? Optional.of(cached.uuid) : Optional.empty();
+    }
+
+    public static class CachedUuid {
+
+        private final UUID uuid;
+        private final long timestamp;
+
+        public CachedUuid(UUID uuid, long timestamp) {
+            this.uuid = uuid;
+            this.timestamp = timestamp;
+        }
+
+        public UUID getUuid() {
+            return uuid;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+    }
+}
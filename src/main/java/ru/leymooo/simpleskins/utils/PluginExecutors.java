@@ -0,0 +1,53 @@
+package ru.leymooo.simpleskins.utils;
+
+import ninja.leaping.configurate.ConfigurationNode;
+import ru.leymooo.simpleskins.SimpleSkins;
+
+/**
+ * Executors of the plugin. Slow skin API requests can not take threads of database writes or commands.
+ */
+public class PluginExecutors {
+
+    private final BoundedExecutor network;
+    private final BoundedExecutor database;
+    private final BoundedExecutor command;
+
+    public PluginExecutors(SimpleSkins plugin, ConfigurationNode config) {
+        boolean virtual = config.getNode("virtual-threads").getBoolean(false);
+        if (virtual && !VirtualThreads.isSupported()) {
+            plugin.getLogger().warn("Virtual threads require Java 21 or newer, using platform threads");
+            virtual = false;
+        }
+        this.network = new BoundedExecutor("Network", config.getNode("network"), 8, 256, "abort", virtual, plugin.getMetrics());
+        //lookups are submitted from login events, so a full queue must not run JDBC in the event thread
+        this.database = new BoundedExecutor("Database", config.getNode("database"), 4, 1024, "abort", virtual, plugin.getMetrics());
+        this.command = new BoundedExecutor("Command", config.getNode("command"), 2, 64, "abort", false, plugin.getMetrics());
+    }
+
+    /**
+     * Requests to skin APIs and parsing of responses
+     */
+    public BoundedExecutor getNetwork() {
+        return network;
+    }
+
+    /**
+     * Database reads and writes
+     */
+    public BoundedExecutor getDatabase() {
+        return database;
+    }
+
+    /**
+     * Handling of player commands
+     */
+    public BoundedExecutor getCommand() {
+        return command;
+    }
+
+    public void shutdown() {
+        command.shutdown(1000);
+        network.shutdown(5000);
+        database.shutdown(5000);
+    }
+}
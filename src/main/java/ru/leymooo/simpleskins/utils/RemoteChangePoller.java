@@ -0,0 +1,68 @@
+package ru.leymooo.simpleskins.utils;
+
+import com.velocitypowered.api.scheduler.ScheduledTask;
+import ninja.leaping.configurate.ConfigurationNode;
+import ru.leymooo.simpleskins.SimpleSkins;
+import ru.leymooo.simpleskins.utils.DataBaseUtils.UserRow;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drops cached skins which were changed in a shared database by other proxies.
+ * Users table is polled by timestamp, recent rows are checked again because clocks of proxies may differ.
+ */
+public class RemoteChangePoller {
+
+    private static final int PAGE_SIZE = 500;
+    private final SimpleSkins plugin;
+    private final DataBaseUtils dataBaseUtils;
+    private final long clockSkew;
+    private final ScheduledTask task;
+    private long cursorTimestamp;
+
+    /**
+     * @param config - 'database.sql' section of config
+     */
+    public RemoteChangePoller(SimpleSkins plugin, DataBaseUtils dataBaseUtils, ConfigurationNode config) {
+        this.plugin = plugin;
+        this.dataBaseUtils = dataBaseUtils;
+        this.clockSkew = Math.max(0, config.getNode("clock-skew").getLong(5000));
+        this.cursorTimestamp = System.currentTimeMillis();
+        long interval = config.getNode("sync-interval").getLong(5);
+        this.task = plugin.getProxyServer().getScheduler().buildTask(plugin, this::poll)
+                .delay(interval, TimeUnit.SECONDS).repeat(interval, TimeUnit.SECONDS).schedule();
+    }
+
+    private void poll() {
+        long afterTimestamp = cursorTimestamp - clockSkew;
+        String afterName = "";
+        long latest = cursorTimestamp;
+        int invalidated = 0;
+        try {
+            List<UserRow> page;
+            do {
+                page = dataBaseUtils.getChangedUsers(afterTimestamp, afterName, PAGE_SIZE);
+                for (UserRow user : page) {
+                    dataBaseUtils.getUserCache().invalidate(user.getName());
+                    afterTimestamp = user.getTimestamp();
+                    afterName = user.getName();
+                    latest = Math.max(latest, user.getTimestamp());
+                    invalidated++;
+                }
+            } while (page.size() == PAGE_SIZE);
+        } catch (SQLException ex) {
+            plugin.getLogger().error("Can not poll database changes", ex);
+            return;
+        }
+        cursorTimestamp = latest;
+        if (invalidated > 0) {
+            plugin.getLogger().debug("Invalidated {} changed skins", invalidated);
+        }
+    }
+
+    public void close() {
+        task.cancel();
+    }
+}
@@ -0,0 +1,39 @@
+package ru.leymooo.simpleskins.utils;
+
+import ru.leymooo.simpleskins.utils.skinfetch.FetchResult;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Skin resolved for a joining player and the skin which should be saved once the player has joined.
+ * Saving is left to the caller, so skins resolved for players who never joined are not stored.
+ */
+public class ResolvedSkin {
+
+    private static final CompletableFuture<FetchResult> NOTHING = CompletableFuture.completedFuture(null);
+    private final FetchResult skin;
+    private final CompletableFuture<FetchResult> toSave;
+
+    /**
+     * @param toSave - completed with the skin to save or null, may complete after the skin is applied
+     */
+    public ResolvedSkin(FetchResult skin, CompletableFuture<FetchResult> toSave) {
+        this.skin = skin;
+        this.toSave = toSave == null ? NOTHING : toSave;
+    }
+
+    public ResolvedSkin(FetchResult skin) {
+        this(skin, null);
+    }
+
+    /**
+     * @return skin to apply or null if player keeps own skin
+     */
+    public FetchResult getSkin() {
+        return skin;
+    }
+
+    public CompletableFuture<FetchResult> getToSave() {
+        return toSave;
+    }
+}
@@ -0,0 +1,96 @@
+package ru.leymooo.simpleskins.utils;
+
+import com.velocitypowered.api.scheduler.ScheduledTask;
+import ru.leymooo.simpleskins.SimpleSkins;
+import ru.leymooo.simpleskins.utils.skinfetch.FetchResult;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind queue for user saves. Pending saves are coalesced by lowercased name
+ * and written in batches when batch size is reached or flush interval is passed.
+ */
+public class SaveQueue {
+
+    private final SimpleSkins plugin;
+    private final DataBaseUtils dataBaseUtils;
+    private final int batchSize;
+    private final ConcurrentMap<String, FetchResult> pending = new ConcurrentHashMap<>();
+    private final Lock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final ScheduledTask flushTask;
+
+    public SaveQueue(SimpleSkins plugin, DataBaseUtils dataBaseUtils, int batchSize, long flushInterval) {
+        this.plugin = plugin;
+        this.dataBaseUtils = dataBaseUtils;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushTask = plugin.getProxyServer().getScheduler().buildTask(plugin, this::flush)
+                .repeat(flushInterval, TimeUnit.MILLISECONDS).delay(flushInterval, TimeUnit.MILLISECONDS).schedule();
+    }
+
+    public void add(String name, FetchResult result) {
+        pending.put(name.toLowerCase(), result);
+        if (pending.size() >= batchSize && flushScheduled.compareAndSet(false, true)) {
+            try {
+                plugin.getExecutors().getDatabase().execute(() -> {
+                    flushScheduled.set(false);
+                    flush();
+                });
+            } catch (RejectedExecutionException ex) {
+                //saves come from fetch callbacks, not from login events, so the batch can be written here
+                flushScheduled.set(false);
+                flush();
+            }
+        }
+    }
+
+    /**
+     * @return save which is not written to the database yet
+     */
+    public Optional<FetchResult> getPending(String name) {
+        return Optional.ofNullable(pending.get(name.toLowerCase()));
+    }
+
+    public void flush() {
+        flushLock.lock();
+        try {
+            while (!pending.isEmpty()) {
+                Map<String, FetchResult> batch = new HashMap<>();
+                Iterator<Map.Entry<String, FetchResult>> iterator = pending.entrySet().iterator();
+                while (iterator.hasNext() && batch.size() < batchSize) {
+                    Map.Entry<String, FetchResult> entry = iterator.next();
+                    batch.put(entry.getKey(), entry.getValue());
+                }
+                try {
+                    dataBaseUtils.saveUsers(batch);
+                } catch (SQLException ex) {
+                    plugin.getLogger().error("Can not save {} users", batch.size(), ex);
+                    return;
+                }
+                //keep saves which were replaced while batch was written
+                batch.forEach(pending::remove);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Stops scheduled flushes and writes all pending saves
+     */
+    public void close() {
+        flushTask.cancel();
+        flush();
+    }
+}
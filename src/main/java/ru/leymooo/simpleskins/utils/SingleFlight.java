@@ -0,0 +1,43 @@
+package ru.leymooo.simpleskins.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent requests for the same key. Only the first caller runs the loader,
+ * other callers receive the same future until it is completed.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> loader) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            loader.get().whenComplete((value, ex) -> complete(key, future, value, ex));
+        } catch (Throwable ex) {
+            complete(key, future, null, ex);
+        }
+        return future;
+    }
+
+    public boolean isInFlight(K key) {
+        return inFlight.containsKey(key);
+    }
+
+    private void complete(K key, CompletableFuture<V> future, V value, Throwable ex) {
+        //remove first, so callers which come after completion start a new request
+        inFlight.remove(key, future);
+        if (ex != null) {
+            future.completeExceptionally(ex);
+        } else {
+            future.complete(value);
+        }
+    }
+}
@@ -26,7 +26,7 @@ public class SkinApplier {
         return false;
     }
 
-    private static List<GameProfile.Property> createProperties(List<GameProfile.Property> original, GameProfile.Property property) {
+    public static List<GameProfile.Property> createProperties(List<GameProfile.Property> original, GameProfile.Property property) {
         List<GameProfile.Property> properties = new ArrayList<>(original);
         boolean applied = false;
         for (int i = 0; i < properties.size(); i++) {
@@ -0,0 +1,63 @@
+package ru.leymooo.simpleskins.utils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import ninja.leaping.configurate.ConfigurationNode;
+import ru.leymooo.simpleskins.metrics.Counter;
+import ru.leymooo.simpleskins.metrics.Metrics;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Skins resolved at pre-login, while the proxy authenticates the player. Prefetches are kept
+ * by connection and name for a short time, prefetches of players who did not join are dropped without saving.
+ */
+public class SkinPrefetcher {
+
+    private final Cache<String, CompletableFuture<ResolvedSkin>> prefetches;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter abandoned;
+
+    /**
+     * @param config - 'prefetch' section of config
+     */
+    public SkinPrefetcher(ConfigurationNode config, Metrics metrics) {
+        this.hits = metrics.counter("simpleskins_prefetch_total", "result", "hit");
+        this.misses = metrics.counter("simpleskins_prefetch_total", "result", "miss");
+        this.abandoned = metrics.counter("simpleskins_prefetch_total", "result", "abandoned");
+        this.prefetches = CacheBuilder.newBuilder()
+                .maximumSize(config.getNode("max-entries").getLong(1000))
+                .expireAfterWrite(config.getNode("ttl").getLong(30), TimeUnit.SECONDS)
+                .<String, CompletableFuture<ResolvedSkin>>removalListener(notification -> {
+                    if (notification.getCause() == RemovalCause.EXPIRED || notification.getCause() == RemovalCause.SIZE) {
+                        abandoned.increment();
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Starts resolving skin of the connecting player. Skin is saved only if it is taken by the joined player
+     */
+    public void prefetch(InetSocketAddress address, String name, Supplier<CompletableFuture<ResolvedSkin>> resolver) {
+        prefetches.put(key(address, name), resolver.get());
+    }
+
+    /**
+     * @return prefetched skin of the joined player or null if it was not prefetched
+     */
+    public CompletableFuture<ResolvedSkin> take(InetSocketAddress address, String name) {
+        CompletableFuture<ResolvedSkin> prefetched = prefetches.asMap().remove(key(address, name));
+        (prefetched == null ? misses : hits).increment();
+        return prefetched;
+    }
+
+    private static String key(InetSocketAddress address, String name) {
+        return address + "/" + name.toLowerCase();
+    }
+}
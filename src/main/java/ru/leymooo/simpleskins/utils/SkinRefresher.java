@@ -0,0 +1,123 @@
+package ru.leymooo.simpleskins.utils;
+
+import com.velocitypowered.api.scheduler.ScheduledTask;
+import ninja.leaping.configurate.ConfigurationNode;
+import ru.leymooo.simpleskins.SimpleSkins;
+import ru.leymooo.simpleskins.utils.DataBaseUtils.UserRow;
+import ru.leymooo.simpleskins.utils.FetchScheduler.Priority;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches again skins which were not updated for a long time. Stale users are walked in small pages
+ * ordered by timestamp and name, so every run continues where the previous one stopped.
+ */
+public class SkinRefresher {
+
+    private final SimpleSkins plugin;
+    private final long maxAge;
+    private final int batchSize;
+    private final int budget;
+    private final int concurrency;
+    private final int quietStart;
+    private final int quietEnd;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final ScheduledTask task;
+    private long cursorTimestamp = -1;
+    private String cursorName = "";
+
+    public SkinRefresher(SimpleSkins plugin, ConfigurationNode config) {
+        this.plugin = plugin;
+        this.maxAge = TimeUnit.DAYS.toMillis(config.getNode("max-age").getLong(7));
+        this.batchSize = Math.max(1, config.getNode("batch-size").getInt(20));
+        this.budget = Math.max(1, config.getNode("max-requests").getInt(60));
+        this.concurrency = Math.max(1, config.getNode("concurrency").getInt(2));
+        this.quietStart = config.getNode("quiet-hours", "start").getInt(0);
+        this.quietEnd = config.getNode("quiet-hours", "end").getInt(0);
+        long interval = Math.max(1, config.getNode("interval").getLong(5));
+        this.task = plugin.getProxyServer().getScheduler().buildTask(plugin, this::refresh)
+                .delay(interval, TimeUnit.MINUTES).repeat(interval, TimeUnit.MINUTES).schedule();
+    }
+
+    private void refresh() {
+        if (!isQuietTime() || !running.compareAndSet(false, true)) {
+            return;
+        }
+        List<UserRow> users;
+        try {
+            users = collectStaleUsers();
+        } catch (RuntimeException ex) {
+            running.set(false);
+            throw ex;
+        }
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger refreshed = new AtomicInteger();
+        List<CompletableFuture<Void>> workers = new ArrayList<>();
+        for (int i = 0; i < Math.min(concurrency, users.size()); i++) {
+            workers.add(refreshNext(users, next, refreshed));
+        }
+        CompletableFuture.allOf(workers.toArray(new CompletableFuture[0])).whenComplete((ignored, ex) -> {
+            running.set(false);
+            if (!users.isEmpty()) {
+                plugin.getLogger().info("Refreshed {} of {} stale skins", refreshed.get(), users.size());
+            }
+        });
+    }
+
+    private List<UserRow> collectStaleUsers() {
+        List<UserRow> users = new ArrayList<>();
+        long olderThan = System.currentTimeMillis() - maxAge;
+        while (users.size() < budget) {
+            int limit = Math.min(batchSize, budget - users.size());
+            List<UserRow> page = plugin.getDataBaseUtils().getStaleUsers(olderThan, cursorTimestamp, cursorName, limit);
+            for (UserRow user : page) {
+                if (user.getSkinUuid() != null) {
+                    users.add(user);
+                }
+            }
+            if (page.size() < limit) {
+                //all stale users are walked, next run starts from the oldest one
+                cursorTimestamp = -1;
+                cursorName = "";
+                break;
+            }
+            UserRow last = page.get(page.size() - 1);
+            cursorTimestamp = last.getTimestamp();
+            cursorName = last.getName();
+        }
+        return users;
+    }
+
+    private CompletableFuture<Void> refreshNext(List<UserRow> users, AtomicInteger next, AtomicInteger refreshed) {
+        int index = next.getAndIncrement();
+        if (index >= users.size()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        UserRow user = users.get(index);
+        return plugin.getSkinFetcher().refetchSkin(user.getSkinUuid(), Priority.BACKGROUND).thenCompose(result -> {
+            result.ifPresent(skin -> {
+                plugin.getDataBaseUtils().saveUser(user.getName(), skin);
+                refreshed.incrementAndGet();
+            });
+            return refreshNext(users, next, refreshed);
+        });
+    }
+
+    private boolean isQuietTime() {
+        if (quietStart == quietEnd) {
+            return true;
+        }
+        int hour = LocalTime.now().getHour();
+        return quietStart < quietEnd ? hour >= quietStart && hour < quietEnd : hour >= quietStart || hour < quietEnd;
+    }
+
+    public void close() {
+        task.cancel();
+    }
+}
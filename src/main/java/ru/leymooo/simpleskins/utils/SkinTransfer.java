@@ -0,0 +1,293 @@
+package ru.leymooo.simpleskins.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.velocitypowered.api.command.CommandSource;
+import com.velocitypowered.api.util.GameProfile;
+import ninja.leaping.configurate.ConfigurationNode;
+import ru.leymooo.simpleskins.SimpleSkins;
+import ru.leymooo.simpleskins.utils.skinfetch.FetchResult;
+import ru.leymooo.simpleskins.utils.skinfetch.SkinFetchResult;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Export and import of player skins as NDJSON or CSV (by file extension). Rows are streamed,
+ * so memory does not depend on the amount of players. Only one transfer runs at a time.
+ * Files are kept in the exports folder of the plugin, so config and database can not be overwritten.
+ */
+public class SkinTransfer {
+
+    private static final Gson GSON = new Gson();
+    private static final String CSV_HEADER = "name,skinUuid,value,signature,timestamp";
+    private static final long PROGRESS_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+    private static final String DIRECTORY = "exports";
+    private final SimpleSkins plugin;
+    private final int fetchSize;
+    private final int batchSize;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * @param config - 'database' section of config
+     */
+    public SkinTransfer(SimpleSkins plugin, ConfigurationNode config) {
+        this.plugin = plugin;
+        this.fetchSize = Math.max(1, config.getNode("transfer-fetch-size").getInt(1000));
+        this.batchSize = Math.max(1, config.getNode("transfer-batch-size").getInt(500));
+    }
+
+    /**
+     * @param fileName - .ndjson or .csv file in the exports folder of the plugin
+     * @return null if transfer is started, otherwise key of the message with the reason
+     */
+    public String startExport(CommandSource source, String fileName) {
+        return start(source, fileName, false);
+    }
+
+    public String startImport(CommandSource source, String fileName) {
+        return start(source, fileName, true);
+    }
+
+    private String start(CommandSource source, String fileName, boolean isImport) {
+        Path directory = plugin.getDataDirectory().resolve(DIRECTORY).toAbsolutePath().normalize();
+        Path file = directory.resolve(fileName).normalize();
+        if (!file.getParent().equals(directory) || !isSupported(file)) {
+            return "transfer-invalid-file";
+        }
+        if (isImport ? !Files.isRegularFile(file) : Files.exists(file) && !Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) {
+            return "transfer-invalid-file";
+        }
+        if (!isImport) {
+            try {
+                Files.createDirectories(directory);
+            } catch (IOException ex) {
+                plugin.getLogger().error("Can not create {}", directory, ex);
+                return "transfer-invalid-file";
+            }
+        }
+        if (!running.compareAndSet(false, true)) {
+            return "transfer-running";
+        }
+        Progress progress = new Progress(source, isImport ? "Import" : "Export");
+        plugin.getProxyServer().getScheduler().buildTask(plugin, () -> {
+            try {
+                if (isImport) {
+                    importFile(file, progress);
+                } else {
+                    exportFile(file, progress);
+                }
+                progress.finish();
+            } catch (IOException | SQLException | RuntimeException ex) {
+                plugin.getLogger().error("{} of {} failed", progress.operation, file, ex);
+                source.sendMessage(plugin.deserialize(new String[]{"messages", "transfer-failed"},
+                        "{operation}", progress.operation, "{rows}", progress.rows, "{error}", ex.getMessage()));
+            } finally {
+                running.set(false);
+            }
+        }).schedule();
+        return null;
+    }
+
+    private void exportFile(Path file, Progress progress) throws IOException, SQLException {
+        boolean csv = isCsv(file);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            if (csv) {
+                writer.write(CSV_HEADER);
+                writer.newLine();
+            }
+            plugin.getDataBaseUtils().forEachUser(fetchSize, (name, skin, timestamp) -> {
+                SkinRecord record = new SkinRecord(name, skin, timestamp);
+                writer.write(csv ? record.toCsv() : GSON.toJson(record));
+                writer.newLine();
+                progress.add(1);
+            });
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void importFile(Path file, Progress progress) throws IOException, SQLException {
+        boolean csv = isCsv(file);
+        Map<String, FetchResult> users = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || (csv && line.equalsIgnoreCase(CSV_HEADER))) {
+                    continue;
+                }
+                SkinRecord record;
+                FetchResult skin;
+                try {
+                    record = csv ? SkinRecord.fromCsv(line) : GSON.fromJson(line, SkinRecord.class);
+                    skin = record != null && record.isValid() ? record.toFetchResult() : null;
+                } catch (JsonParseException | IllegalArgumentException ex) {
+                    record = null;
+                    skin = null;
+                }
+                if (skin == null) {
+                    progress.skipped++;
+                    continue;
+                }
+                String name = record.name.toLowerCase();
+                users.put(name, skin);
+                if (users.size() >= batchSize) {
+                    writeBatch(users, progress);
+                }
+            }
+        }
+        writeBatch(users, progress);
+    }
+
+    private void writeBatch(Map<String, FetchResult> users, Progress progress) throws SQLException {
+        if (users.isEmpty()) {
+            return;
+        }
+        plugin.getDataBaseUtils().importUsers(users);
+        progress.add(users.size());
+        users.clear();
+    }
+
+    private static boolean isSupported(Path file) {
+        String name = file.getFileName().toString().toLowerCase();
+        return name.endsWith(".ndjson") || name.endsWith(".csv");
+    }
+
+    private static boolean isCsv(Path file) {
+        return file.getFileName().toString().toLowerCase().endsWith(".csv");
+    }
+
+    private class Progress {
+
+        private final CommandSource source;
+        private final String operation;
+        private final long start = System.nanoTime();
+        private long lastReport = start;
+        private long rows;
+        private long skipped;
+
+        private Progress(CommandSource source, String operation) {
+            this.source = source;
+            this.operation = operation;
+        }
+
+        private void add(int count) {
+            rows += count;
+            long now = System.nanoTime();
+            if (now - lastReport >= PROGRESS_INTERVAL) {
+                lastReport = now;
+                source.sendMessage(plugin.deserialize(new String[]{"messages", "transfer-progress"},
+                        "{operation}", operation, "{rows}", rows));
+            }
+        }
+
+        private void finish() {
+            long seconds = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start);
+            plugin.getLogger().info("{} finished: {} rows, {} skipped in {}s", operation, rows, skipped, seconds);
+            source.sendMessage(plugin.deserialize(new String[]{"messages", "transfer-done"},
+                    "{operation}", operation, "{rows}", rows, "{skipped}", skipped, "{seconds}", seconds));
+        }
+    }
+
+    private static class SkinRecord {
+
+        private String name;
+        private String skinUuid;
+        private String value;
+        private String signature;
+        private long timestamp;
+
+        //used by gson
+        private SkinRecord() {
+        }
+
+        private SkinRecord(String name, FetchResult skin, long timestamp) {
+            this.name = name;
+            this.skinUuid = skin.getId() == null ? null : skin.getId().toString();
+            this.value = skin.getProperty().getValue();
+            this.signature = skin.getProperty().getSignature();
+            this.timestamp = timestamp;
+        }
+
+        private boolean isValid() {
+            return name != null && !name.isEmpty() && name.length() <= 16 && value != null && signature != null;
+        }
+
+        private FetchResult toFetchResult() {
+            UUID id = skinUuid == null || skinUuid.isEmpty() ? null : UUID.fromString(skinUuid);
+            return new SkinFetchResult(id, new GameProfile.Property("textures", value, signature));
+        }
+
+        private String toCsv() {
+            return quote(name) + ',' + quote(skinUuid) + ',' + quote(value) + ',' + quote(signature) + ',' + timestamp;
+        }
+
+        private static SkinRecord fromCsv(String line) {
+            List<String> fields = parseCsv(line);
+            if (fields.size() != 5) {
+                throw new IllegalArgumentException("Expected 5 fields, got " + fields.size());
+            }
+            SkinRecord record = new SkinRecord();
+            record.name = fields.get(0);
+            record.skinUuid = fields.get(1);
+            record.value = fields.get(2);
+            record.signature = fields.get(3);
+            record.timestamp = fields.get(4).isEmpty() ? 0 : Long.parseLong(fields.get(4));
+            return record;
+        }
+
+        private static String quote(String field) {
+            if (field == null) {
+                return "";
+            }
+            if (field.indexOf(',') < 0 && field.indexOf('"') < 0) {
+                return field;
+            }
+            return '"' + field.replace("\"", "\"\"") + '"';
+        }
+
+        private static List<String> parseCsv(String line) {
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quoted) {
+                    if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else if (c == '"') {
+                        quoted = false;
+                    } else {
+                        field.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else {
+                    field.append(c);
+                }
+            }
+            fields.add(field.toString());
+            return fields;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package ru.leymooo.simpleskins.utils;
+
+import com.velocitypowered.api.scheduler.ScheduledTask;
+import ru.leymooo.simpleskins.SimpleSkins;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Moves textures of old Users rows to the Textures table in small batches while the proxy is running,
+ * then removes textures which are not used by any player from time to time.
+ */
+public class TextureMaintenance {
+
+    private static final int MIGRATION_BATCH = 200;
+    private final SimpleSkins plugin;
+    private final DataBaseUtils dataBaseUtils;
+    private final AtomicBoolean migrating = new AtomicBoolean(true);
+    private final ScheduledTask migrationTask;
+    private final ScheduledTask cleanupTask;
+    private long migrated;
+
+    public TextureMaintenance(SimpleSkins plugin, DataBaseUtils dataBaseUtils) {
+        this.plugin = plugin;
+        this.dataBaseUtils = dataBaseUtils;
+        this.migrationTask = plugin.getProxyServer().getScheduler().buildTask(plugin, this::migrate)
+                .delay(1, TimeUnit.SECONDS).repeat(1, TimeUnit.SECONDS).schedule();
+        this.cleanupTask = plugin.getProxyServer().getScheduler().buildTask(plugin, this::cleanup)
+                .delay(1, TimeUnit.HOURS).repeat(12, TimeUnit.HOURS).schedule();
+    }
+
+    private synchronized void migrate() {
+        if (!migrating.get()) {
+            return;
+        }
+        try {
+            int moved = dataBaseUtils.migrateTextures(MIGRATION_BATCH);
+            migrated += moved;
+            if (moved > 0) {
+                return;
+            }
+        } catch (SQLException ex) {
+            plugin.getLogger().error("Can not move textures, will try again after restart", ex);
+        }
+        migrating.set(false);
+        migrationTask.cancel();
+        if (migrated > 0) {
+            plugin.getLogger().info("Moved textures of {} users to the Textures table", migrated);
+            cleanup();
+        }
+    }
+
+    private void cleanup() {
+        try {
+            int deleted = dataBaseUtils.deleteUnusedTextures();
+            if (deleted > 0) {
+                plugin.getLogger().info("Removed {} unused textures", deleted);
+            }
+        } catch (SQLException ex) {
+            plugin.getLogger().error("Can not execute SQL", ex);
+        }
+    }
+
+    public void close() {
+        migrating.set(false);
+        migrationTask.cancel();
+        cleanupTask.cancel();
+    }
+}
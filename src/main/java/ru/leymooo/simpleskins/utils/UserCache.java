@@ -0,0 +1,56 @@
+package ru.leymooo.simpleskins.utils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.velocitypowered.api.util.GameProfile;
+import ninja.leaping.configurate.ConfigurationNode;
+import ru.leymooo.simpleskins.utils.skinfetch.FetchResult;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-through cache of the Users table keyed by lowercased name.
+ */
+public class UserCache {
+
+    //Usual skin takes one slot, bigger payloads take one more slot per this amount of chars
+    private static final int SLOT_CHARS = 2048;
+    private final Cache<String, FetchResult> cache;
+
+    public UserCache(ConfigurationNode config) {
+        this.cache = CacheBuilder.newBuilder()
+                .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+                .maximumWeight(config.getNode("max-entries").getLong(10000))
+                .weigher((String name, FetchResult result) -> weigh(result))
+                .expireAfterWrite(config.getNode("ttl").getLong(30), TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+    }
+
+    public Optional<FetchResult> getIfCached(String name) {
+        return Optional.ofNullable(cache.getIfPresent(name.toLowerCase()));
+    }
+
+    public void cache(String name, FetchResult result) {
+        cache.put(name.toLowerCase(), result);
+    }
+
+    public void invalidate(String name) {
+        cache.invalidate(name.toLowerCase());
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    private static int weigh(FetchResult result) {
+        GameProfile.Property property = result.getProperty();
+        if (property == null) {
+            return 1;
+        }
+        int chars = property.getValue().length() + (property.getSignature() == null ? 0 : property.getSignature().length());
+        return 1 + chars / SLOT_CHARS;
+    }
+}
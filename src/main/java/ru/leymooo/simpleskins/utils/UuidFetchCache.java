@@ -2,44 +2,195 @@ package ru.leymooo.simpleskins.utils;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.velocitypowered.api.util.GameProfile;
+import ninja.leaping.configurate.ConfigurationNode;
 import ru.leymooo.simpleskins.SimpleSkins;
+import ru.leymooo.simpleskins.metrics.Counter;
 import ru.leymooo.simpleskins.utils.skinfetch.FetchResult;
+import ru.leymooo.simpleskins.utils.skinfetch.NotFoundFetchResult;
+import ru.leymooo.simpleskins.utils.skinfetch.RateLimitedFetchResult;
 
-import java.util.HashSet;
 import java.util.Optional;
-import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
+/**
+ * Skins fetched from skin API keyed by UUID of the skin owner. Cache is bounded by the size of payloads.
+ * Skin older than the refresh interval is still returned, while a newer one is fetched in background.
+ */
 public class UuidFetchCache {
 
-    private final Set<UUID> working = new HashSet<>();
-    private final Cache<UUID, FetchResult> cache = CacheBuilder.newBuilder()
-            .concurrencyLevel(Runtime.getRuntime().availableProcessors())
-            .expireAfterWrite(1, TimeUnit.MINUTES)
-            .build();
+    //Approximate memory of an entry without the payload
+    private static final int ENTRY_OVERHEAD = 200;
+    private final SingleFlight<UUID, FetchResult> requests = new SingleFlight<>();
+    private final Cache<UUID, Entry> cache;
+    private final long refreshAfter;
+    private final long negativeTtl;
+    private final Counter staleHits;
+    private final Counter refreshes;
+    private final Counter refreshFailures;
+    private final Counter negativeHits;
 
-    public UuidFetchCache(SimpleSkins plugin) {
+    /**
+     * @param config - 'skin-cache' section of config
+     */
+    public UuidFetchCache(SimpleSkins plugin, ConfigurationNode config) {
+        this.refreshAfter = TimeUnit.SECONDS.toNanos(Math.max(1, config.getNode("refresh-after").getLong(60)));
+        this.negativeTtl = TimeUnit.SECONDS.toNanos(Math.max(0, config.getNode("negative-ttl").getLong(300)));
+        this.cache = CacheBuilder.newBuilder()
+                .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+                .maximumWeight(Math.max(1, config.getNode("max-size").getLong(4096)) * 1024)
+                .weigher((UUID id, Entry entry) -> entry.weight)
+                .expireAfterWrite(Math.max(1, config.getNode("ttl").getLong(10)), TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+        this.staleHits = plugin.getMetrics().counter("simpleskins_uuid_cache_total", "event", "stale_hit");
+        this.refreshes = plugin.getMetrics().counter("simpleskins_uuid_cache_total", "event", "refresh");
+        this.refreshFailures = plugin.getMetrics().counter("simpleskins_uuid_cache_total", "event", "refresh_failure");
+        this.negativeHits = plugin.getMetrics().counter("simpleskins_uuid_cache_total", "event", "negative_hit");
         plugin.getProxyServer().getScheduler().buildTask(plugin, cache::cleanUp).repeat(15, TimeUnit.SECONDS).delay(5, TimeUnit.MILLISECONDS).schedule();
+        plugin.getMetrics().cacheStats("uuid", cache::stats);
+        plugin.getMetrics().gauge("simpleskins_uuid_cache_entries", cache::size);
     }
 
-    public boolean isWorking(UUID id) {
-        return working.contains(id);
+    public CompletableFuture<FetchResult> get(UUID id, Supplier<CompletableFuture<FetchResult>> loader) {
+        return get(id, loader, loader);
     }
 
-    public void addWorking(UUID id) {
-        working.add(id);
+    /**
+     * Returns cached result or loads it. Concurrent loads of the same id share one request.
+     * Stale skin is returned immediately and refreshed in background.
+     *
+     * @param refresher - loader of background refreshes. It is not shared with other loads, because it may wait
+     *                  for a free slot of the fetch scheduler longer than the load which would join it
+     */
+    public CompletableFuture<FetchResult> get(UUID id, Supplier<CompletableFuture<FetchResult>> loader,
+                                              Supplier<CompletableFuture<FetchResult>> refresher) {
+        Entry entry = getEntry(id);
+        if (entry == null) {
+            return load(id, loader);
+        }
+        if (entry.claimRefresh(refreshAfter)) {
+            staleHits.increment();
+            refreshes.increment();
+            refresh(refresher).whenComplete((result, ex) -> {
+                if (ex != null || result.getProperty() == null) {
+                    //stale skin is kept, next refresh is tried after one more interval
+                    refreshFailures.increment();
+                }
+            });
+        }
+        return CompletableFuture.completedFuture(entry.result);
     }
 
-    public void removeWorking(UUID id) {
-        working.remove(id);
+    /**
+     * Loads result even if it is cached, used when an old skin must not be returned
+     */
+    public CompletableFuture<FetchResult> reload(UUID id, Supplier<CompletableFuture<FetchResult>> loader) {
+        return load(id, loader);
     }
 
     public Optional<FetchResult> getIfCached(UUID id) {
-        return Optional.ofNullable(cache.getIfPresent(id));
+        Entry entry = getEntry(id);
+        return entry == null ? Optional.empty() : Optional.of(entry.result);
     }
 
     public void cache(FetchResult result) {
-        cache.put(result.getId(), result);
+        cache.put(result.getId(), new Entry(result, refreshAfter));
+    }
+
+    private Entry getEntry(UUID id) {
+        Entry entry = cache.getIfPresent(id);
+        if (entry == null || entry.result.getProperty() != null) {
+            return entry;
+        }
+        if (isNegativeExpired(entry)) {
+            cache.asMap().remove(id, entry);
+            return null;
+        }
+        negativeHits.increment();
+        return entry;
+    }
+
+    private boolean isNegativeExpired(Entry entry) {
+        if (entry.result instanceof RateLimitedFetchResult) {
+            return ((RateLimitedFetchResult) entry.result).isExpired();
+        }
+        return entry.result instanceof NotFoundFetchResult && System.nanoTime() - entry.created >= negativeTtl;
+    }
+
+    private CompletableFuture<FetchResult> load(UUID id, Supplier<CompletableFuture<FetchResult>> loader) {
+        return requests.execute(id, () -> loader.get().thenApply(result -> {
+            store(result);
+            return result;
+        }));
+    }
+
+    /**
+     * Only one refresh of an entry is claimed per interval, so it does not need to be coalesced
+     */
+    private CompletableFuture<FetchResult> refresh(Supplier<CompletableFuture<FetchResult>> refresher) {
+        CompletableFuture<FetchResult> future;
+        try {
+            future = refresher.get();
+        } catch (RuntimeException ex) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(ex);
+        }
+        return future.thenApply(result -> {
+            store(result);
+            return result;
+        });
+    }
+
+    /**
+     * Negative result does not replace a fetched skin, the player is more likely to keep the skin than to be deleted
+     */
+    private void store(FetchResult result) {
+        if (result.getProperty() == null) {
+            Entry current = cache.getIfPresent(result.getId());
+            if (current != null && current.result.getProperty() != null) {
+                return;
+            }
+        }
+        cache(result);
+    }
+
+    private static class Entry {
+
+        private final FetchResult result;
+        private final int weight;
+        private final long created = System.nanoTime();
+        private final AtomicLong refreshAt;
+
+        private Entry(FetchResult result, long refreshAfter) {
+            this.result = result;
+            this.weight = weigh(result.getProperty());
+            this.refreshAt = new AtomicLong(created + refreshAfter);
+        }
+
+        /**
+         * @return true if skin is stale and the caller should refresh it. Next refresh is allowed after one more interval
+         */
+        private boolean claimRefresh(long refreshAfter) {
+            if (result.getProperty() == null) {
+                return false;
+            }
+            long now = System.nanoTime();
+            long at = refreshAt.get();
+            return now - at >= 0 && refreshAt.compareAndSet(at, now + refreshAfter);
+        }
+
+        private static int weigh(GameProfile.Property property) {
+            if (property == null) {
+                return ENTRY_OVERHEAD;
+            }
+            //base64 payloads are ASCII, so a char takes one byte when sent to players
+            int signature = property.getSignature() == null ? 0 : property.getSignature().length();
+            return ENTRY_OVERHEAD + property.getValue().length() + signature;
+        }
     }
 }
@@ -0,0 +1,21 @@
+package ru.leymooo.simpleskins.utils;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Virtual threads are available since Java 21. Multi-release jar contains Java 21 version of this class
+ * in META-INF/versions/21, this one is used on older runtimes.
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    static boolean isSupported() {
+        return false;
+    }
+
+    static ExecutorService newExecutor(String name) {
+        throw new IllegalStateException("Virtual threads require Java 21");
+    }
+}
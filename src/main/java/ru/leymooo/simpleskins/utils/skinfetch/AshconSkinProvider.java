@@ -0,0 +1,36 @@
+package ru.leymooo.simpleskins.utils.skinfetch;
+
+import ninja.leaping.configurate.ConfigurationNode;
+import ru.leymooo.simpleskins.SimpleSkins;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Provider for api.ashcon.app and mirrors with the same API
+ */
+public class AshconSkinProvider extends HttpSkinProvider {
+
+    public static final String UUID_URL = "https://api.ashcon.app/mojang/v2/uuid/";
+    public static final String SKIN_URL = "https://api.ashcon.app/mojang/v2/user/";
+    private final String uuidUrl;
+    private final String skinUrl;
+
+    public AshconSkinProvider(String name, String uuidUrl, String skinUrl, HttpTransport transport, SimpleSkins plugin,
+                              ConfigurationNode rateLimit) {
+        super(name, transport, plugin, rateLimit);
+        this.uuidUrl = uuidUrl;
+        this.skinUrl = skinUrl;
+    }
+
+    @Override
+    public CompletableFuture<UUID> fetchUuid(String name) {
+        return request(uuidLimit, uuidUrl + name, name, response -> UUID.fromString(ProfileJsonReader.readString(response.getBody())));
+    }
+
+    @Override
+    public CompletableFuture<FetchResult> fetchSkin(UUID uuid) {
+        return request(skinLimit, skinUrl + uuid.toString(), uuid.toString(),
+                response -> new SkinFetchResult(uuid, ProfileJsonReader.readAshconTextures(response.getBody())));
+    }
+}
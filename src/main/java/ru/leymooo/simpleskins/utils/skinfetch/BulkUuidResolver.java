@@ -0,0 +1,131 @@
+package ru.leymooo.simpleskins.utils.skinfetch;
+
+import com.google.gson.JsonArray;
+import com.velocitypowered.api.util.UuidUtils;
+import ninja.leaping.configurate.ConfigurationNode;
+import ru.leymooo.simpleskins.SimpleSkins;
+import ru.leymooo.simpleskins.utils.skinfetch.SkinFetcher.UserNotFoundException;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects name to UUID lookups for a short time and sends them to the Mojang bulk profiles endpoint,
+ * which accepts up to 10 names per request.
+ */
+public class BulkUuidResolver {
+
+    public static final String BULK_URL = "https://api.minecraftservices.com/minecraft/profile/lookup/bulk/byname";
+    private static final int MAX_BATCH = 10;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private final SimpleSkins plugin;
+    private final HttpTransport transport;
+    private final String url;
+    private final long window;
+    private final TokenBucket limit;
+    private final long defaultRetryAfter;
+    private final Map<String, CompletableFuture<UUID>> pending = new LinkedHashMap<>();
+    private boolean flushScheduled;
+
+    public BulkUuidResolver(SimpleSkins plugin, HttpTransport transport, ConfigurationNode config, ConfigurationNode rateLimit) {
+        this.plugin = plugin;
+        this.transport = transport;
+        this.url = config.getNode("url").getString(BULK_URL);
+        this.window = Math.max(1, config.getNode("window").getLong(50));
+        this.limit = new TokenBucket(plugin, "mojang bulk endpoint", rateLimit);
+        this.defaultRetryAfter = TimeUnit.SECONDS.toMillis(rateLimit.getNode("default-retry-after").getLong(60));
+    }
+
+    public CompletableFuture<UUID> resolve(String name) {
+        String key = name.toLowerCase();
+        Map<String, CompletableFuture<UUID>> batch = null;
+        CompletableFuture<UUID> future;
+        synchronized (this) {
+            future = pending.get(key);
+            if (future != null) {
+                return future;
+            }
+            future = new CompletableFuture<>();
+            pending.put(key, future);
+            if (pending.size() >= MAX_BATCH) {
+                batch = takeBatch();
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                plugin.getProxyServer().getScheduler().buildTask(plugin, this::flush).delay(window, TimeUnit.MILLISECONDS).schedule();
+            }
+        }
+        if (batch != null) {
+            send(batch);
+        }
+        return future;
+    }
+
+    private void flush() {
+        while (true) {
+            Map<String, CompletableFuture<UUID>> batch;
+            synchronized (this) {
+                flushScheduled = false;
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = takeBatch();
+            }
+            send(batch);
+        }
+    }
+
+    private Map<String, CompletableFuture<UUID>> takeBatch() {
+        Map<String, CompletableFuture<UUID>> batch = new HashMap<>();
+        Iterator<Map.Entry<String, CompletableFuture<UUID>>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext() && batch.size() < MAX_BATCH) {
+            Map.Entry<String, CompletableFuture<UUID>> entry = iterator.next();
+            batch.put(entry.getKey(), entry.getValue());
+            iterator.remove();
+        }
+        return batch;
+    }
+
+    private void send(Map<String, CompletableFuture<UUID>> batch) {
+        JsonArray names = new JsonArray();
+        batch.keySet().forEach(names::add);
+        limit.acquire().thenCompose(ignored -> transport.post(url, names.toString())).thenAccept(response -> {
+            int responseCode = response.getCode();
+            if (responseCode == HttpURLConnection.HTTP_OK) {
+                try {
+                    ProfileJsonReader.readProfiles(response.getBody(), (name, id) -> {
+                        CompletableFuture<UUID> future = batch.get(name.toLowerCase());
+                        if (future != null) {
+                            future.complete(UuidUtils.fromUndashed(id));
+                        }
+                    });
+                } catch (IOException ex) {
+                    throw new CompletionException(ex);
+                }
+                //names which are not in the response do not exist
+                batch.forEach((name, future) -> future.completeExceptionally(new UserNotFoundException(name)));
+                return;
+            }
+            SkinProviderException ex;
+            if (responseCode == HTTP_TOO_MANY_REQUESTS) {
+                long retryAt = System.currentTimeMillis() + response.getRetryAfter(defaultRetryAfter);
+                limit.blockUntil(retryAt);
+                ex = new RateLimitedException("Bulk profiles endpoint responded with " + responseCode, retryAt);
+            } else {
+                ex = new SkinProviderException("Bulk profiles endpoint responded with " + responseCode);
+            }
+            batch.values().forEach(future -> future.completeExceptionally(ex));
+        }).exceptionally(ex -> {
+            Throwable cause = SkinFetcher.unwrap(ex);
+            batch.values().forEach(future -> future.completeExceptionally(cause));
+            return null;
+        });
+    }
+}
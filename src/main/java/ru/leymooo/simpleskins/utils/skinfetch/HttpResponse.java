@@ -0,0 +1,72 @@
+package ru.leymooo.simpleskins.utils.skinfetch;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class HttpResponse {
+
+    private final String url;
+    private final int code;
+    private final Map<String, List<String>> headers;
+    private final byte[] body;
+
+    public HttpResponse(String url, int code, Map<String, List<String>> headers, byte[] body) {
+        this.url = url;
+        this.code = code;
+        this.headers = headers == null ? Collections.emptyMap() : headers;
+        this.body = body;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public String getHeader(String name) {
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()) {
+                return header.getValue().get(0);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Retry-After header in millis. Header can be either amount of seconds or http date
+     */
+    public long getRetryAfter(long defaultRetryAfter) {
+        String retryAfter = getHeader("Retry-After");
+        if (retryAfter == null) {
+            return defaultRetryAfter;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException ignored) {
+        }
+        try {
+            return Math.max(0, ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli()
+                    - System.currentTimeMillis());
+        } catch (DateTimeParseException ex) {
+            return defaultRetryAfter;
+        }
+    }
+
+    public InputStream getBody() {
+        return new ByteArrayInputStream(body);
+    }
+
+    public String getBodyAsString() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,76 @@
+package ru.leymooo.simpleskins.utils.skinfetch;
+
+import ninja.leaping.configurate.ConfigurationNode;
+import ru.leymooo.simpleskins.SimpleSkins;
+import ru.leymooo.simpleskins.utils.skinfetch.SkinFetcher.UserNotFoundException;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base of providers which use http json APIs. Responses are parsed in the thread which completes the request:
+ * a network executor thread or a thread of the java.net.http client.
+ * Every endpoint of the provider has own rate limit.
+ */
+abstract class HttpSkinProvider implements SkinProvider {
+
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private final String name;
+    private final HttpTransport transport;
+    private final SimpleSkins plugin;
+    private final long defaultRetryAfter;
+    final TokenBucket uuidLimit;
+    final TokenBucket skinLimit;
+
+    HttpSkinProvider(String name, HttpTransport transport, SimpleSkins plugin, ConfigurationNode rateLimit) {
+        this.name = name;
+        this.transport = transport;
+        this.plugin = plugin;
+        this.defaultRetryAfter = TimeUnit.SECONDS.toMillis(rateLimit.getNode("default-retry-after").getLong(60));
+        this.uuidLimit = new TokenBucket(plugin, name + " uuid endpoint", rateLimit);
+        this.skinLimit = new TokenBucket(plugin, name + " skin endpoint", rateLimit);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param limit  - rate limit of the endpoint
+     * @param url    - url to request
+     * @param user   - name or UUID of the requested user
+     * @param parser - parser of the successful response
+     */
+    <T> CompletableFuture<T> request(TokenBucket limit, String url, String user, ResponseParser<T> parser) {
+        return limit.acquire().thenCompose(ignored -> transport.get(url)).thenApply(response -> {
+            int responseCode = response.getCode();
+            if (responseCode == HTTP_TOO_MANY_REQUESTS) {
+                long retryAt = System.currentTimeMillis() + response.getRetryAfter(defaultRetryAfter);
+                limit.blockUntil(retryAt);
+                throw new CompletionException(new RateLimitedException(name + " responded with " + responseCode, retryAt));
+            }
+            try {
+                if (responseCode == HttpURLConnection.HTTP_OK) {
+                    return parser.parse(response);
+                } else if (responseCode == HttpURLConnection.HTTP_NO_CONTENT || responseCode == HttpURLConnection.HTTP_NOT_FOUND
+                        || responseCode == HttpURLConnection.HTTP_BAD_REQUEST) {
+                    throw new UserNotFoundException(user);
+                }
+            } catch (UserNotFoundException | IOException ex) {
+                throw new CompletionException(ex);
+            }
+            plugin.getLogger().error("Received response: {} for {}", responseCode, response.getUrl());
+            plugin.getLogger().error("Error stream: {}", response.getBodyAsString());
+            throw new CompletionException(new SkinProviderException(name + " responded with " + responseCode));
+        });
+    }
+
+    interface ResponseParser<T> {
+
+        T parse(HttpResponse response) throws UserNotFoundException, IOException;
+    }
+}
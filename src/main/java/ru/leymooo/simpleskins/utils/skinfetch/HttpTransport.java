@@ -0,0 +1,15 @@
+package ru.leymooo.simpleskins.utils.skinfetch;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Transport used by {@link SkinFetcher} to send requests to skin APIs.
+ */
+public interface HttpTransport {
+
+    CompletableFuture<HttpResponse> get(String url);
+
+    CompletableFuture<HttpResponse> post(String url, String json);
+
+    void close();
+}
@@ -0,0 +1,22 @@
+package ru.leymooo.simpleskins.utils.skinfetch;
+
+import ninja.leaping.configurate.ConfigurationNode;
+import ru.leymooo.simpleskins.utils.BoundedExecutor;
+
+/**
+ * Creates transport for skin APIs. Multi-release jar contains Java 11 version of this class
+ * in META-INF/versions/11 which can use java.net.http client, this one is used on Java 8.
+ */
+public final class HttpTransports {
+
+    private HttpTransports() {
+    }
+
+    /**
+     * @param config   - 'http' section of config
+     * @param executor - executor which runs blocking requests
+     */
+    public static HttpTransport create(ConfigurationNode config, BoundedExecutor executor) {
+        return new UrlConnectionTransport(config, executor);
+    }
+}
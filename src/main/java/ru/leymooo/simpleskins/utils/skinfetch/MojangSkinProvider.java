@@ -0,0 +1,38 @@
+package ru.leymooo.simpleskins.utils.skinfetch;
+
+import com.velocitypowered.api.util.UuidUtils;
+import ninja.leaping.configurate.ConfigurationNode;
+import ru.leymooo.simpleskins.SimpleSkins;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Provider for Mojang API and session server and mirrors with the same API
+ */
+public class MojangSkinProvider extends HttpSkinProvider {
+
+    public static final String UUID_URL = "https://api.mojang.com/users/profiles/minecraft/";
+    public static final String SKIN_URL = "https://sessionserver.mojang.com/session/minecraft/profile/";
+    private final String uuidUrl;
+    private final String skinUrl;
+
+    public MojangSkinProvider(String name, String uuidUrl, String skinUrl, HttpTransport transport, SimpleSkins plugin,
+                              ConfigurationNode rateLimit) {
+        super(name, transport, plugin, rateLimit);
+        this.uuidUrl = uuidUrl;
+        this.skinUrl = skinUrl;
+    }
+
+    @Override
+    public CompletableFuture<UUID> fetchUuid(String name) {
+        return request(uuidLimit, uuidUrl + name, name,
+                response -> UuidUtils.fromUndashed(ProfileJsonReader.readField(response.getBody(), "id")));
+    }
+
+    @Override
+    public CompletableFuture<FetchResult> fetchSkin(UUID uuid) {
+        return request(skinLimit, skinUrl + UuidUtils.toUndashed(uuid) + "?unsigned=false", uuid.toString(),
+                response -> new SkinFetchResult(uuid, ProfileJsonReader.readMojangTextures(response.getBody())));
+    }
+}
@@ -0,0 +1,28 @@
+package ru.leymooo.simpleskins.utils.skinfetch;
+
+import com.velocitypowered.api.util.GameProfile;
+
+import java.util.UUID;
+
+/**
+ * Remembered answer of skin API that the player does not exist, so it is not requested again for a while.
+ */
+public class NotFoundFetchResult implements FetchResult {
+
+    private final UUID id;
+
+    public NotFoundFetchResult(UUID id) {
+        this.id = id;
+    }
+
+    @Override
+    public UUID getId() {
+        return id;
+    }
+
+    @Override
+    public GameProfile.Property getProperty() {
+        return null;
+    }
+
+}
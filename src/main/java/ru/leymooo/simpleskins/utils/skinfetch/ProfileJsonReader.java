@@ -0,0 +1,155 @@
+package ru.leymooo.simpleskins.utils.skinfetch;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.velocitypowered.api.util.GameProfile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.function.BiConsumer;
+
+/**
+ * Streaming readers of skin API responses. Only needed fields are read,
+ * everything else (name history, decoded textures, etc.) is skipped without building a tree.
+ */
+public final class ProfileJsonReader {
+
+    private ProfileJsonReader() {
+    }
+
+    /**
+     * Reads top level json string, like ashcon uuid response
+     */
+    public static String readString(InputStream in) throws IOException {
+        try (JsonReader reader = createReader(in)) {
+            return reader.nextString();
+        }
+    }
+
+    /**
+     * Reads string field of the top level object, like id of mojang profile
+     */
+    public static String readField(InputStream in, String field) throws IOException {
+        try (JsonReader reader = createReader(in)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (field.equals(reader.nextName()) && reader.peek() == JsonToken.STRING) {
+                    return reader.nextString();
+                }
+                reader.skipValue();
+            }
+        }
+        throw new IOException("Response has no " + field);
+    }
+
+    /**
+     * Reads textures.raw.value and textures.raw.signature of ashcon user response
+     */
+    public static GameProfile.Property readAshconTextures(InputStream in) throws IOException {
+        try (JsonReader reader = createReader(in)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!"textures".equals(reader.nextName()) || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if ("raw".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                        return readProperty(reader, "textures");
+                    }
+                    reader.skipValue();
+                }
+                reader.endObject();
+            }
+        }
+        throw new IOException("Response has no textures");
+    }
+
+    /**
+     * Reads textures property of mojang session server profile
+     */
+    public static GameProfile.Property readMojangTextures(InputStream in) throws IOException {
+        try (JsonReader reader = createReader(in)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!"properties".equals(reader.nextName()) || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    GameProfile.Property property = readProperty(reader, null);
+                    if ("textures".equals(property.getName())) {
+                        return property;
+                    }
+                }
+                reader.endArray();
+            }
+        }
+        throw new IOException("Response has no textures");
+    }
+
+    /**
+     * Reads array of profiles with id and name, like mojang bulk profiles response
+     */
+    public static void readProfiles(InputStream in, BiConsumer<String, String> nameAndId) throws IOException {
+        try (JsonReader reader = createReader(in)) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                String name = null;
+                String id = null;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String field = reader.nextName();
+                    if ("name".equals(field)) {
+                        name = reader.nextString();
+                    } else if ("id".equals(field)) {
+                        id = reader.nextString();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                if (name != null && id != null) {
+                    nameAndId.accept(name, id);
+                }
+            }
+            reader.endArray();
+        }
+    }
+
+    /**
+     * Reads object with name, value and signature fields
+     *
+     * @param name - name of property if object has no name field
+     */
+    private static GameProfile.Property readProperty(JsonReader reader, String name) throws IOException {
+        String value = null;
+        String signature = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if ("value".equals(field)) {
+                value = reader.nextString();
+            } else if ("signature".equals(field)) {
+                signature = reader.nextString();
+            } else if ("name".equals(field)) {
+                name = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (value == null || signature == null) {
+            throw new IOException("Property " + name + " has no value or signature");
+        }
+        return new GameProfile.Property(name, value, signature);
+    }
+
+    private static JsonReader createReader(InputStream in) {
+        return new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+}
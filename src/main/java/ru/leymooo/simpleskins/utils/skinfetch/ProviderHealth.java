@@ -0,0 +1,117 @@
+package ru.leymooo.simpleskins.utils.skinfetch;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Observed latency and error rate of a {@link SkinProvider} with a circuit breaker.
+ */
+public class ProviderHealth {
+
+    //weight of the last request in the moving averages
+    private static final double ALPHA = 0.2;
+    //error rate of 100% makes the provider look this times slower
+    private static final double ERROR_PENALTY = 10;
+    //latency in millis of a provider without successful requests, so it is neither preferred nor avoided
+    private static final double UNMEASURED_LATENCY = 500;
+    private final SkinProvider provider;
+    private final int failureThreshold;
+    private final long openTime;
+    private State state = State.CLOSED;
+    private double latency = UNMEASURED_LATENCY;
+    private double errorRate;
+    private int consecutiveFailures;
+    private long openedAt;
+    private long requests;
+    private long failures;
+    private long successes;
+
+    public ProviderHealth(SkinProvider provider, int failureThreshold, long openTime) {
+        this.provider = provider;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openTime = openTime;
+    }
+
+    public SkinProvider getProvider() {
+        return provider;
+    }
+
+    /**
+     * @return true if request can be sent to the provider. When breaker is open and open time is passed,
+     * only one probe request is allowed
+     */
+    public synchronized boolean allowRequest() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openTime) {
+            state = State.HALF_OPEN;
+            return true;
+        }
+        return state == State.CLOSED;
+    }
+
+    public synchronized void onSuccess(long nanos) {
+        requests++;
+        successes++;
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+        //only successful requests are measured, fast failures would make a broken provider look fast
+        double millis = nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        latency = successes == 1 ? millis : latency + ALPHA * (millis - latency);
+        updateErrorRate(0);
+    }
+
+    public synchronized void onFailure() {
+        requests++;
+        failures++;
+        consecutiveFailures++;
+        updateErrorRate(1);
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Rate limited request says nothing about provider health. If it was the probe, breaker is opened
+     * again, so the next probe is allowed after open time
+     */
+    public synchronized void onRateLimited() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * @return routing score, lower is better
+     */
+    public synchronized double getScore() {
+        return latency * (1 + errorRate * ERROR_PENALTY);
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized double getLatency() {
+        return latency;
+    }
+
+    public synchronized double getErrorRate() {
+        return errorRate;
+    }
+
+    public synchronized long getRequests() {
+        return requests;
+    }
+
+    public synchronized long getFailures() {
+        return failures;
+    }
+
+    private void updateErrorRate(int failed) {
+        errorRate = errorRate + ALPHA * (failed - errorRate);
+    }
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+}
@@ -0,0 +1,18 @@
+package ru.leymooo.simpleskins.utils.skinfetch;
+
+public class RateLimitedException extends SkinProviderException {
+
+    private final long retryAt;
+
+    /**
+     * @param retryAt - time in millis after which requests are allowed again or 0 if unknown
+     */
+    public RateLimitedException(String message, long retryAt) {
+        super(message);
+        this.retryAt = retryAt;
+    }
+
+    public long getRetryAt() {
+        return retryAt;
+    }
+}
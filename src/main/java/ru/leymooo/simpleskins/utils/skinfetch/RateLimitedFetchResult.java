@@ -7,9 +7,11 @@ import java.util.UUID;
 public class RateLimitedFetchResult implements FetchResult {
 
     private final UUID id;
+    private final long retryAt;
 
-    public RateLimitedFetchResult(UUID id) {
+    public RateLimitedFetchResult(UUID id, long retryAt) {
         this.id = id;
+        this.retryAt = retryAt;
     }
 
     @Override
@@ -22,4 +24,15 @@ public class RateLimitedFetchResult implements FetchResult {
         return null;
     }
 
+    /**
+     * @return time in millis after which skin can be requested again
+     */
+    public long getRetryAt() {
+        return retryAt;
+    }
+
+    public boolean isExpired() {
+        return System.currentTimeMillis() >= retryAt;
+    }
+
 }
@@ -24,185 +24,209 @@
  */
 package ru.leymooo.simpleskins.utils.skinfetch;
 
-import com.google.common.io.CharStreams;
-import com.google.common.net.HttpHeaders;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import com.google.gson.JsonSyntaxException;
 import com.velocitypowered.api.proxy.Player;
-import com.velocitypowered.api.util.GameProfile;
-import org.slf4j.Logger;
+import ninja.leaping.configurate.ConfigurationNode;
 import ru.leymooo.simpleskins.SimpleSkins;
+import ru.leymooo.simpleskins.metrics.Timer;
 import ru.leymooo.simpleskins.utils.DataBaseUtils;
+import ru.leymooo.simpleskins.utils.FetchScheduler;
+import ru.leymooo.simpleskins.utils.FetchScheduler.Priority;
+import ru.leymooo.simpleskins.utils.NameUuidCache;
+import ru.leymooo.simpleskins.utils.SingleFlight;
 import ru.leymooo.simpleskins.utils.UuidFetchCache;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.net.SocketTimeoutException;
+import java.sql.SQLException;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class SkinFetcher {
 
-    private static final String UUID_URL = "https://api.ashcon.app/mojang/v2/uuid/";
-    //private static final String SKIN_URL = "https://sessionserver.mojang.com/session/minecraft/profile/";
-    private static final String ALTERNATIVE_SKIN_URL = "https://api.ashcon.app/mojang/v2/user/";
-
-    private static final JsonParser JSON_PARSER = new JsonParser();
-    private static final int TIMEOUT = 6000;
     private final SimpleSkins plugin;
     private final DataBaseUtils dataBaseUtils;
     private final UuidFetchCache uuidFetchCache;
+    private final NameUuidCache nameUuidCache;
+    private final HttpTransport transport;
+    private final SkinProviderRouter providerRouter;
+    private final BulkUuidResolver bulkUuidResolver;
+    private final FetchScheduler scheduler;
+    private final SingleFlight<String, UUID> uuidRequests = new SingleFlight<>();
+    private final Timer uuidTimer;
+    private final Timer skinTimer;
 
-    public SkinFetcher(SimpleSkins plugin, DataBaseUtils db, UuidFetchCache uuidCache) {
+    public SkinFetcher(SimpleSkins plugin, DataBaseUtils db, UuidFetchCache uuidCache, HttpTransport transport) {
         this.plugin = plugin;
         this.dataBaseUtils = db;
         this.uuidFetchCache = uuidCache;
+        this.nameUuidCache = new NameUuidCache(db, plugin.getExecutors().getDatabase(), plugin.getConfig().getNode("name-cache"));
+        this.transport = transport;
+        this.scheduler = new FetchScheduler(plugin.getConfig().getNode("scheduler"), plugin.getMetrics());
+        ConfigurationNode providers = plugin.getConfig().getNode("providers");
+        this.providerRouter = new SkinProviderRouter(plugin, transport, providers);
+        this.bulkUuidResolver = providers.getNode("bulk-uuid", "enabled").getBoolean(true)
+                ? new BulkUuidResolver(plugin, transport, providers.getNode("bulk-uuid"), providers.getNode("rate-limit"))
+                : null;
+        this.uuidTimer = plugin.getMetrics().timer("simpleskins_fetch_seconds", "stage", "uuid");
+        this.skinTimer = plugin.getMetrics().timer("simpleskins_fetch_seconds", "stage", "skin");
     }
 
-    public Optional<FetchResult> getPlayerSkinFromDatabase(String userName) {
+    public Optional<FetchResult> getPlayerSkinFromDatabase(String userName) throws SQLException {
         return dataBaseUtils.getProperty(userName);
     }
 
-    public Optional<FetchResult> fetchSkin(Player player, UUID uuid) {
-        return fetchSkin(player, (Object) uuid);
+    /**
+     * @return skin stored in database, fails if database is not available
+     */
+    public CompletableFuture<Optional<FetchResult>> getPlayerSkinFromDatabaseAsync(String userName) {
+        return plugin.getExecutors().getDatabase().supply(() -> {
+            try {
+                return getPlayerSkinFromDatabase(userName);
+            } catch (SQLException ex) {
+                throw new CompletionException(ex);
+            }
+        });
     }
 
-    public Optional<FetchResult> fetchSkin(Player player, String name) {
-        return fetchSkin(player, (Object) name);
+    /**
+     * Fetches current skin from skin API, cached skin is not used
+     */
+    public CompletableFuture<Optional<FetchResult>> fetchSkin(Player player, UUID uuid) {
+        return fetchSkin(player, scheduler.submit(Priority.COMMAND, () -> getSkin(uuid, true)));
     }
 
-    private Optional<FetchResult> fetchSkin(Player player, Object object) {
-        try {
-            Optional<FetchResult> result = object instanceof String ? getSkin((String) object) : getSkin((UUID) object);
-            if (!result.isPresent()) {
-                player.sendMessage(plugin.deserialize("messages", "working"));
-                return Optional.empty();
-            }
-            return result;
-        } catch (UserNotFoundException ignored) {
+    public CompletableFuture<Optional<FetchResult>> fetchSkin(Player player, String name) {
+        return fetchSkin(player, scheduler.submit(Priority.COMMAND, () -> getSkin(name)));
+    }
 
-        } catch (IOException | JsonSyntaxException ex) {
-            plugin.getLogger().error("Can not fetch skin", ex);
-        }
-        player.sendMessage(plugin.deserialize("messages", "skin-not-found"));
-        return Optional.empty();
+    private CompletableFuture<Optional<FetchResult>> fetchSkin(Player player, CompletableFuture<FetchResult> future) {
+        return future.handle((result, ex) -> {
+            if (ex == null) {
+                return Optional.of(result);
+            }
+            Throwable cause = unwrap(ex);
+            if (!(cause instanceof UserNotFoundException)) {
+                plugin.getLogger().error("Can not fetch skin", cause);
+            }
+            player.sendMessage(plugin.deserialize("messages", "skin-not-found"));
+            return Optional.empty();
+        });
     }
 
     /**
      * Fetch skin. Will print error to console.
      *
      * @param name   - Name or UUID in string
-     * @param silent - if false error will be printed to console
-     * @return Optional of FetchResult
+     * @param silent   - if false error will be printed to console
+     * @param priority - order in which waiting fetches are started
+     * @return Future of FetchResult
      */
-    public Optional<FetchResult> fetchSkin(String name, boolean silent) {
-        try {
-            return getSkin(name);
-        } catch (IOException | JsonSyntaxException | UserNotFoundException ex) {
+    public CompletableFuture<Optional<FetchResult>> fetchSkin(String name, boolean silent, Priority priority) {
+        return scheduler.submit(priority, () -> getSkin(name)).handle((result, ex) -> {
+            if (ex == null) {
+                return Optional.of(result);
+            }
             if (!silent) {
-                plugin.getLogger().error("Can not fetch skin for {}", name, ex);
+                plugin.getLogger().error("Can not fetch skin for {}", name, unwrap(ex));
             }
-        }
-        return Optional.empty();
+            return Optional.empty();
+        });
     }
 
-    private Optional<FetchResult> getSkin(String name) throws UserNotFoundException, IOException, JsonSyntaxException {
-        UUID uuid = (uuid = getUuidIfValid(name)) == null ? fetchUUID(name) : uuid;
-        return getSkin(uuid);
+    /**
+     * Fetches current skin from skin API, cached skin is not used. Errors are not printed
+     */
+    public CompletableFuture<Optional<FetchResult>> refetchSkin(UUID uuid, Priority priority) {
+        return scheduler.submit(priority, () -> getSkin(uuid, true))
+                .handle((result, ex) -> ex == null ? Optional.of(result) : Optional.empty());
     }
 
-    private Optional<FetchResult> getSkin(UUID uuid) throws UserNotFoundException, IOException, JsonSyntaxException {
-        if (uuidFetchCache.isWorking(uuid)) {
-            return Optional.empty();
+    private CompletableFuture<FetchResult> getSkin(String name) {
+        UUID uuid = getUuidIfValid(name);
+        if (uuid != null) {
+            return getSkin(uuid, false);
         }
-        uuidFetchCache.addWorking(uuid);
-        try {
-            Optional<FetchResult> result = uuidFetchCache.getIfCached(uuid);
-            if (result.isPresent()) {
-                checkFetchResult(result.get());
-                return result;
+        return uuidRequests.execute(name.toLowerCase(), () -> measure("uuid", uuidTimer, () -> fetchUUID(name)))
+                .thenCompose(owner -> getSkin(owner, false));
+    }
+
+    /**
+     * @param reload - if true cached skin is not used. Otherwise stale cached skin is refreshed with background priority
+     */
+    private CompletableFuture<FetchResult> getSkin(UUID uuid, boolean reload) {
+        Supplier<CompletableFuture<FetchResult>> loader = () -> measure("skin", skinTimer, () -> providerRouter.fetchSkin(uuid)).exceptionally(ex -> {
+            //remember rate limit and missing players, so next requests fail fast
+            Throwable cause = unwrap(ex);
+            if (cause instanceof RateLimitedException && ((RateLimitedException) cause).getRetryAt() > 0) {
+                return new RateLimitedFetchResult(uuid, ((RateLimitedException) cause).getRetryAt());
             }
-            result = Optional.of(fetchSkinAlternative(uuid));
-            uuidFetchCache.cache(result.get());
-            checkFetchResult(result.get());
-            return result;
-        } finally {
-            uuidFetchCache.removeWorking(uuid);
-        }
+            if (cause instanceof UserNotFoundException) {
+                return new NotFoundFetchResult(uuid);
+            }
+            throw ex instanceof CompletionException ? (CompletionException) ex : new CompletionException(ex);
+        });
+        CompletableFuture<FetchResult> result = reload ? uuidFetchCache.reload(uuid, loader)
+                : uuidFetchCache.get(uuid, loader, () -> scheduler.submit(Priority.BACKGROUND, loader));
+        return result.thenApply(fetched -> {
+            checkFetchResult(fetched);
+            return fetched;
+        });
     }
 
-    private UUID fetchUUID(String username) throws IOException, UserNotFoundException, JsonSyntaxException {
+    private CompletableFuture<UUID> fetchUUID(String username) {
         if (username.length() > 16) {
-            throw new UserNotFoundException(username);
-        }
-        HttpURLConnection connection = getConnection(UUID_URL + username);
-        int responseCode = connection.getResponseCode();
-
-        if (validate(responseCode)) {
-            return UUID.fromString(getJson(connection).getAsJsonPrimitive().getAsString());
-        } else if (responseCode != HttpURLConnection.HTTP_NO_CONTENT && responseCode != HttpURLConnection.HTTP_NOT_FOUND) {
-            printErrorStream(connection, responseCode);
+            return failedFuture(new UserNotFoundException(username));
         }
-        throw new UserNotFoundException(username);
+        return nameUuidCache.get(username).thenCompose(cached -> cached.isPresent()
+                ? CompletableFuture.completedFuture(cached.get()) : fetchUUIDFromApi(username));
     }
 
-    private void checkFetchResult(FetchResult result) throws UserNotFoundException {
-        if (result instanceof RateLimitedFetchResult) {
-            throw new UserNotFoundException("Can not fetch skin due to rate-limit for " + result.getId());
-        }
+    private CompletableFuture<UUID> fetchUUIDFromApi(String username) {
+        CompletableFuture<UUID> fetched = bulkUuidResolver == null ? providerRouter.fetchUuid(username)
+                : bulkUuidResolver.resolve(username).handle((uuid, ex) -> {
+            if (ex == null) {
+                return CompletableFuture.completedFuture(uuid);
+            }
+            Throwable cause = unwrap(ex);
+            //bulk endpoint is not available, so try single lookups
+            return cause instanceof UserNotFoundException ? SkinFetcher.<UUID>failedFuture(cause) : providerRouter.fetchUuid(username);
+        }).thenCompose(Function.identity());
+        return fetched.thenApply(uuid -> {
+            nameUuidCache.put(username, uuid);
+            return uuid;
+        });
     }
 
-    /*
-    private FetchResult fetchSkin(UUID uuid) throws IOException, UserNotFoundException, JsonSyntaxException {
-        HttpURLConnection connection = getConnection(SKIN_URL + UuidUtils.toUndashed(uuid) + "?unsigned=false");
-        int responseCode = connection.getResponseCode();
-
-        if (validate(responseCode)) {
-            JsonObject paresed = getJson(connection).getAsJsonObject();
-            JsonObject skin = paresed.getAsJsonArray("properties").get(0).getAsJsonObject();
-            return new SkinFetchResult(uuid,
-                    new GameProfile.Property("textures", skin.get("value").getAsString(), skin.get("signature").getAsString()));
-        } else if (responseCode == 429) { //Rate limited
-            return fetchSkinAlternative(uuid);
-        } else if (responseCode != HttpURLConnection.HTTP_NO_CONTENT && responseCode != HttpURLConnection.HTTP_NOT_FOUND) {
-            printErrorStream(connection, responseCode);
-        }
-        throw new UserNotFoundException(uuid.toString());
+    /**
+     * Records latency of the fetch stage and reason of its failure
+     */
+    private <T> CompletableFuture<T> measure(String stage, Timer timer, Supplier<CompletableFuture<T>> request) {
+        long start = System.nanoTime();
+        CompletableFuture<T> future = request.get();
+        future.whenComplete((value, ex) -> {
+            timer.recordSince(start);
+            if (ex != null) {
+                plugin.getMetrics().counter("simpleskins_fetch_failures_total", "stage", stage,
+                        "reason", getFailureReason(unwrap(ex))).increment();
+            }
+        });
+        return future;
     }
-    */
 
-    private FetchResult fetchSkinAlternative(UUID uuid) throws IOException, UserNotFoundException, JsonSyntaxException {
-        HttpURLConnection connection = getConnection(ALTERNATIVE_SKIN_URL + uuid.toString());
-        int responseCode = connection.getResponseCode();
-
-        if (validate(responseCode)) {
-            JsonObject parsed = getJson(connection).getAsJsonObject();
-            JsonObject skin = parsed.getAsJsonObject("textures").getAsJsonObject("raw");
-            return new SkinFetchResult(uuid,
-                    new GameProfile.Property("textures", skin.get("value").getAsString(), skin.get("signature").getAsString()));
-        } else if (responseCode != HttpURLConnection.HTTP_NO_CONTENT && responseCode != HttpURLConnection.HTTP_NOT_FOUND) {
-            printErrorStream(connection, responseCode);
+    private void checkFetchResult(FetchResult result) {
+        if (result instanceof RateLimitedFetchResult) {
+            throw new CompletionException(new UserNotFoundException("Can not fetch skin due to rate-limit for " + result.getId()));
         }
-        throw new UserNotFoundException(uuid.toString());
-    }
-
-    private JsonElement getJson(HttpURLConnection connection) throws IOException {
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
-            return JSON_PARSER.parse(reader);
+        if (result instanceof NotFoundFetchResult) {
+            throw new CompletionException(new UserNotFoundException(result.getId().toString()));
         }
     }
 
-    private boolean validate(int responseCode) {
-        return responseCode == HttpURLConnection.HTTP_OK;
-    }
-
     private UUID getUuidIfValid(String toParse) {
         try {
             return UUID.fromString(toParse);
@@ -211,27 +235,44 @@ public class SkinFetcher {
         }
     }
 
-    private HttpURLConnection getConnection(String url) throws IOException {
-        HttpURLConnection httpConnection = (HttpURLConnection) new URL(url).openConnection();
+    public FetchScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public SkinProviderRouter getProviderRouter() {
+        return providerRouter;
+    }
+
+    public void close() {
+        transport.close();
+    }
 
-        httpConnection.setConnectTimeout(TIMEOUT);
-        httpConnection.setReadTimeout(2 * TIMEOUT);
+    static <T> CompletableFuture<T> failedFuture(Throwable ex) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(ex);
+        return future;
+    }
 
-        httpConnection.setRequestProperty(HttpHeaders.CONTENT_TYPE, "application/json");
-        httpConnection.setRequestProperty(HttpHeaders.USER_AGENT, "SimpleSkins-velocity-plugin");
-        return httpConnection;
+    static Throwable unwrap(Throwable ex) {
+        while ((ex instanceof CompletionException || ex instanceof ExecutionException) && ex.getCause() != null) {
+            ex = ex.getCause();
+        }
+        return ex;
     }
 
-    private void printErrorStream(HttpURLConnection connection, int responseCode) throws IOException {
-        Logger logger = plugin.getLogger();
-        //this necessary, because we cannot access input stream if the response code is something like 404
-        try (InputStream in = responseCode < HttpURLConnection.HTTP_BAD_REQUEST
-                ? connection.getInputStream() : connection.getErrorStream()) {
-            logger.error("Received response: {} for {}", responseCode, connection.getURL());
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
-                logger.error("Error stream: {}", CharStreams.toString(reader));
+    static String getFailureReason(Throwable cause) {
+        if (cause instanceof UserNotFoundException) {
+            return "not_found";
+        }
+        if (cause instanceof RateLimitedException) {
+            return "rate_limited";
+        }
+        for (Throwable ex = cause; ex != null; ex = ex.getCause()) {
+            if (ex instanceof SocketTimeoutException || ex instanceof TimeoutException) {
+                return "timeout";
             }
         }
+        return "error";
     }
 
     static class UserNotFoundException extends Exception {
@@ -0,0 +1,17 @@
+package ru.leymooo.simpleskins.utils.skinfetch;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Source of skins. Futures fail with {@link SkinFetcher.UserNotFoundException} if the provider
+ * has no such user and with any other exception if the provider failed to answer.
+ */
+public interface SkinProvider {
+
+    String getName();
+
+    CompletableFuture<UUID> fetchUuid(String name);
+
+    CompletableFuture<FetchResult> fetchSkin(UUID uuid);
+}
@@ -0,0 +1,8 @@
+package ru.leymooo.simpleskins.utils.skinfetch;
+
+public class SkinProviderException extends Exception {
+
+    public SkinProviderException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,122 @@
+package ru.leymooo.simpleskins.utils.skinfetch;
+
+import ninja.leaping.configurate.ConfigurationNode;
+import ru.leymooo.simpleskins.SimpleSkins;
+import ru.leymooo.simpleskins.utils.skinfetch.SkinFetcher.UserNotFoundException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Routes requests to the provider with the best observed latency and error rate.
+ * If provider fails or is rate limited, request is sent to the next one.
+ */
+public class SkinProviderRouter {
+
+    private final SimpleSkins plugin;
+    private final List<ProviderHealth> providers = new ArrayList<>();
+
+    public SkinProviderRouter(SimpleSkins plugin, HttpTransport transport, ConfigurationNode config) {
+        this.plugin = plugin;
+        int failureThreshold = config.getNode("circuit-breaker", "failure-threshold").getInt(5);
+        long openTime = TimeUnit.SECONDS.toMillis(config.getNode("circuit-breaker", "open-time").getLong(30));
+        ConfigurationNode rateLimit = config.getNode("rate-limit");
+        List<SkinProvider> configured = new ArrayList<>();
+        if (config.getNode("ashcon").getBoolean(true)) {
+            configured.add(new AshconSkinProvider("ashcon", AshconSkinProvider.UUID_URL, AshconSkinProvider.SKIN_URL,
+                    transport, plugin, rateLimit));
+        }
+        if (config.getNode("mojang").getBoolean(true)) {
+            configured.add(new MojangSkinProvider("mojang", MojangSkinProvider.UUID_URL, MojangSkinProvider.SKIN_URL,
+                    transport, plugin, rateLimit));
+        }
+        for (ConfigurationNode mirror : config.getNode("custom").getChildrenList()) {
+            String name = mirror.getNode("name").getString("custom");
+            String uuidUrl = mirror.getNode("uuid-url").getString();
+            String skinUrl = mirror.getNode("skin-url").getString();
+            if (uuidUrl == null || skinUrl == null) {
+                plugin.getLogger().warn("Skin provider {} has no uuid-url or skin-url. Skipping it", name);
+                continue;
+            }
+            configured.add("mojang".equalsIgnoreCase(mirror.getNode("type").getString())
+                    ? new MojangSkinProvider(name, uuidUrl, skinUrl, transport, plugin, rateLimit)
+                    : new AshconSkinProvider(name, uuidUrl, skinUrl, transport, plugin, rateLimit));
+        }
+        for (SkinProvider provider : configured) {
+            providers.add(new ProviderHealth(provider, failureThreshold, openTime));
+        }
+    }
+
+    public CompletableFuture<UUID> fetchUuid(String name) {
+        return route(provider -> provider.fetchUuid(name));
+    }
+
+    public CompletableFuture<FetchResult> fetchSkin(UUID uuid) {
+        return route(provider -> provider.fetchSkin(uuid));
+    }
+
+    public List<ProviderHealth> getProviders() {
+        return providers;
+    }
+
+    private <T> CompletableFuture<T> route(Function<SkinProvider, CompletableFuture<T>> request) {
+        List<ProviderHealth> ordered = new ArrayList<>(providers);
+        ordered.sort(Comparator.comparingDouble(ProviderHealth::getScore));
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attempt(ordered, 0, request, result, null);
+        return result;
+    }
+
+    private <T> void attempt(List<ProviderHealth> ordered, int index, Function<SkinProvider, CompletableFuture<T>> request,
+                             CompletableFuture<T> result, Throwable lastError) {
+        while (index < ordered.size() && !ordered.get(index).allowRequest()) {
+            index++;
+        }
+        if (index >= ordered.size()) {
+            result.completeExceptionally(lastError != null ? lastError
+                    : new SkinProviderException("All skin providers are unavailable"));
+            return;
+        }
+        ProviderHealth health = ordered.get(index);
+        int next = index + 1;
+        long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = request.apply(health.getProvider());
+        } catch (Throwable ex) {
+            future = SkinFetcher.failedFuture(ex);
+        }
+        future.whenComplete((value, ex) -> {
+            long nanos = System.nanoTime() - start;
+            Throwable cause = ex == null ? null : SkinFetcher.unwrap(ex);
+            String name = health.getProvider().getName();
+            plugin.getMetrics().timer("simpleskins_provider_request_seconds", "provider", name).record(nanos);
+            if (cause != null && !(cause instanceof UserNotFoundException)) {
+                plugin.getMetrics().counter("simpleskins_provider_failures_total", "provider", name,
+                        "reason", SkinFetcher.getFailureReason(cause)).increment();
+            }
+            if (cause == null || cause instanceof UserNotFoundException) {
+                health.onSuccess(nanos);
+                if (cause == null) {
+                    result.complete(value);
+                } else {
+                    result.completeExceptionally(cause);
+                }
+                return;
+            }
+            //rate limit is handled by the provider, so provider is still healthy
+            if (cause instanceof RateLimitedException) {
+                health.onRateLimited();
+            } else {
+                health.onFailure();
+                plugin.getLogger().warn("Skin provider {} failed: {}", name, cause.toString());
+            }
+            attempt(ordered, next, request, result, cause);
+        });
+    }
+}
@@ -0,0 +1,115 @@
+package ru.leymooo.simpleskins.utils.skinfetch;
+
+import ninja.leaping.configurate.ConfigurationNode;
+import ru.leymooo.simpleskins.SimpleSkins;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client side rate limiter of one endpoint. Requests which have no token wait in a bounded queue.
+ * When endpoint is blocked by Retry-After, requests fail immediately.
+ */
+public class TokenBucket {
+
+    private final SimpleSkins plugin;
+    private final String name;
+    private final double capacity;
+    private final double refillPerMilli;
+    private final int maxQueue;
+    private final Deque<CompletableFuture<Void>> waiting = new ArrayDeque<>();
+    private double tokens;
+    private long lastRefill = System.currentTimeMillis();
+    private long blockedUntil;
+    private boolean drainScheduled;
+
+    public TokenBucket(SimpleSkins plugin, String name, ConfigurationNode config) {
+        this.plugin = plugin;
+        this.name = name;
+        this.capacity = Math.max(1, config.getNode("burst").getInt(10));
+        this.refillPerMilli = Math.max(0.001, config.getNode("requests-per-second").getDouble(2)) / 1000;
+        this.maxQueue = Math.max(0, config.getNode("max-queue").getInt(100));
+        this.tokens = capacity;
+    }
+
+    /**
+     * @return future which is completed when request can be sent
+     */
+    public CompletableFuture<Void> acquire() {
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            refill(now);
+            if (blockedUntil > now) {
+                return SkinFetcher.failedFuture(new RateLimitedException(name + " is rate limited", blockedUntil));
+            }
+            if (waiting.isEmpty() && tokens >= 1) {
+                tokens--;
+                return CompletableFuture.completedFuture(null);
+            }
+            if (waiting.size() >= maxQueue) {
+                return SkinFetcher.failedFuture(new RateLimitedException("Too many requests are waiting for " + name, 0));
+            }
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            waiting.add(future);
+            scheduleDrain();
+            return future;
+        }
+    }
+
+    /**
+     * Blocks requests until provided time. Waiting requests are failed.
+     */
+    public void blockUntil(long retryAt) {
+        List<CompletableFuture<Void>> rejected;
+        synchronized (this) {
+            blockedUntil = Math.max(blockedUntil, retryAt);
+            tokens = 0;
+            rejected = new ArrayList<>(waiting);
+            waiting.clear();
+        }
+        RateLimitedException ex = new RateLimitedException(name + " is rate limited", retryAt);
+        rejected.forEach(future -> future.completeExceptionally(ex));
+    }
+
+    public synchronized long getBlockedUntil() {
+        return blockedUntil;
+    }
+
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+
+    private void drain() {
+        List<CompletableFuture<Void>> ready = new ArrayList<>();
+        synchronized (this) {
+            drainScheduled = false;
+            refill(System.currentTimeMillis());
+            while (!waiting.isEmpty() && tokens >= 1) {
+                tokens--;
+                ready.add(waiting.poll());
+            }
+            if (!waiting.isEmpty()) {
+                scheduleDrain();
+            }
+        }
+        ready.forEach(future -> future.complete(null));
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerMilli);
+        lastRefill = now;
+    }
+
+    private void scheduleDrain() {
+        if (drainScheduled) {
+            return;
+        }
+        drainScheduled = true;
+        long delay = Math.max(1, (long) Math.ceil((1 - tokens) / refillPerMilli));
+        plugin.getProxyServer().getScheduler().buildTask(plugin, this::drain).delay(delay, TimeUnit.MILLISECONDS).schedule();
+    }
+}
@@ -0,0 +1,81 @@
+package ru.leymooo.simpleskins.utils.skinfetch;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.net.HttpHeaders;
+import ninja.leaping.configurate.ConfigurationNode;
+import ru.leymooo.simpleskins.utils.BoundedExecutor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * {@link HttpTransport} based on {@link HttpURLConnection}. Requests are executed on the network executor,
+ * so the amount of its threads is the cap of concurrent requests. Response bodies are always read fully,
+ * so the connections are returned to the keep-alive cache of the JDK and reused.
+ */
+public class UrlConnectionTransport implements HttpTransport {
+
+    private static final String USER_AGENT = "SimpleSkins-velocity-plugin";
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final BoundedExecutor executor;
+
+    public UrlConnectionTransport(ConfigurationNode config, BoundedExecutor executor) {
+        this.connectTimeout = config.getNode("connect-timeout").getInt(6000);
+        this.readTimeout = config.getNode("read-timeout").getInt(12000);
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> get(String url) {
+        return executor.supply(() -> execute(url, null));
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> post(String url, String json) {
+        return executor.supply(() -> execute(url, json));
+    }
+
+    private HttpResponse execute(String url, String json) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(connectTimeout);
+            connection.setReadTimeout(readTimeout);
+            connection.setRequestProperty(HttpHeaders.CONTENT_TYPE, "application/json");
+            connection.setRequestProperty(HttpHeaders.USER_AGENT, USER_AGENT);
+            if (json != null) {
+                connection.setRequestMethod("POST");
+                connection.setDoOutput(true);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(json.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+
+            int code = connection.getResponseCode();
+            //this necessary, because we cannot access input stream if the response code is something like 404
+            InputStream stream = code < HttpURLConnection.HTTP_BAD_REQUEST ? connection.getInputStream() : connection.getErrorStream();
+            byte[] body;
+            if (stream == null) {
+                body = new byte[0];
+            } else {
+                try (InputStream in = stream) {
+                    body = ByteStreams.toByteArray(in);
+                }
+            }
+            return new HttpResponse(url, code, connection.getHeaderFields(), body);
+        } catch (IOException ex) {
+            throw new CompletionException(ex);
+        }
+    }
+
+    @Override
+    public void close() {
+        //threads belong to the plugin executors
+    }
+}
@@ -0,0 +1,121 @@
+package ru.leymooo.simpleskins.utils.skinfetch;
+
+import com.google.common.net.HttpHeaders;
+import ninja.leaping.configurate.ConfigurationNode;
+
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * {@link HttpTransport} based on {@link HttpClient}. Requests are sent asynchronously, so waiting for
+ * a response does not take a thread. Connections are kept alive by the client and HTTP/2 is used
+ * when the server supports it, so requests to the same API share one connection. At most max-in-flight
+ * requests are sent at the same time, others wait in order of arrival. Responses are completed on threads of the client.
+ */
+class HttpClientTransport implements HttpTransport {
+
+    private static final String USER_AGENT = "SimpleSkins-velocity-plugin";
+    private final HttpClient client;
+    private final Duration readTimeout;
+    private final Semaphore inFlight;
+    private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+
+    HttpClientTransport(ConfigurationNode config) {
+        this.inFlight = new Semaphore(Math.max(1, config.getNode("max-in-flight").getInt(16)));
+        this.readTimeout = Duration.ofMillis(config.getNode("read-timeout").getInt(12000));
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(config.getNode("connect-timeout").getInt(6000)))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> get(String url) {
+        return send(url, null);
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> post(String url, String json) {
+        return send(url, json);
+    }
+
+    private CompletableFuture<HttpResponse> send(String url, String json) {
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder(URI.create(url))
+                    .timeout(readTimeout)
+                    .header(HttpHeaders.CONTENT_TYPE, "application/json")
+                    .header(HttpHeaders.USER_AGENT, USER_AGENT)
+                    .method(json == null ? "GET" : "POST", json == null ? HttpRequest.BodyPublishers.noBody()
+                            : HttpRequest.BodyPublishers.ofString(json))
+                    .build();
+        } catch (IllegalArgumentException ex) {
+            return SkinFetcher.failedFuture(ex);
+        }
+        CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+        Runnable start = () -> {
+            CompletableFuture<java.net.http.HttpResponse<byte[]>> sent;
+            try {
+                sent = client.sendAsync(request, java.net.http.HttpResponse.BodyHandlers.ofByteArray());
+            } catch (RuntimeException ex) {
+                sent = SkinFetcher.failedFuture(ex);
+            }
+            sent.whenComplete((response, ex) -> {
+                inFlight.release();
+                startWaiting();
+                if (ex != null) {
+                    result.completeExceptionally(translate(SkinFetcher.unwrap(ex)));
+                } else {
+                    result.complete(new HttpResponse(url, response.statusCode(), response.headers().map(), response.body()));
+                }
+            });
+        };
+        if (waiting.isEmpty() && inFlight.tryAcquire()) {
+            start.run();
+        } else {
+            waiting.add(start);
+            startWaiting();
+        }
+        return result;
+    }
+
+    /**
+     * Sends waiting requests while there are free permits. Request added after the check starts itself
+     */
+    private void startWaiting() {
+        while (!waiting.isEmpty() && inFlight.tryAcquire()) {
+            Runnable next = waiting.poll();
+            if (next == null) {
+                inFlight.release();
+                return;
+            }
+            next.run();
+        }
+    }
+
+    /**
+     * Timeouts are reported like timeouts of {@link java.net.HttpURLConnection}, so failure metrics do not depend on the transport
+     */
+    private static Throwable translate(Throwable ex) {
+        if (ex instanceof HttpTimeoutException) {
+            SocketTimeoutException timeout = new SocketTimeoutException(ex.getMessage());
+            timeout.initCause(ex);
+            return timeout;
+        }
+        return ex;
+    }
+
+    @Override
+    public void close() {
+        //client threads are daemon threads which stop when they are idle
+    }
+}
@@ -0,0 +1,20 @@
+package ru.leymooo.simpleskins.utils.skinfetch;
+
+import ninja.leaping.configurate.ConfigurationNode;
+import ru.leymooo.simpleskins.utils.BoundedExecutor;
+
+/**
+ * Java 11 version of HttpTransports, placed in META-INF/versions/11 of the multi-release jar
+ */
+public final class HttpTransports {
+
+    private HttpTransports() {
+    }
+
+    public static HttpTransport create(ConfigurationNode config, BoundedExecutor executor) {
+        if (config.getNode("async-client").getBoolean(true)) {
+            return new HttpClientTransport(config);
+        }
+        return new UrlConnectionTransport(config, executor);
+    }
+}